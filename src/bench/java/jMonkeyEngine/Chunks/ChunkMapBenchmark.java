@@ -0,0 +1,106 @@
+package jMonkeyEngine.Chunks;
+
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares chunk registry lookups keyed by coordinate objects in a ConcurrentHashMap (a new key per
+ * lookup, hashed with Objects.hash as ChunkCoord used to be) against ConcurrentLongMap with packed keys.
+ */
+public class ChunkMapBenchmark {
+    private static final int RADIUS = 20;
+    private static final int ROUNDS = 500;
+
+    private static final class LegacyCoord {
+        final int x;
+        final int z;
+
+        LegacyCoord(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof LegacyCoord)) return false;
+            LegacyCoord other = (LegacyCoord) obj;
+            return this.x == other.x && this.z == other.z;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, z);
+        }
+    }
+
+    public static void main(String[] args) {
+        ConcurrentHashMap<LegacyCoord, Object> boxed = new ConcurrentHashMap<>();
+        ConcurrentLongMap<Object> packed = new ConcurrentLongMap<>();
+        Object value = new Object();
+        for (int z = -RADIUS; z <= RADIUS; z++) {
+            for (int x = -RADIUS; x <= RADIUS; x++) {
+                boxed.put(new LegacyCoord(x, z), value);
+                packed.put(ChunkCoord.pack(x, z), value);
+            }
+        }
+
+        for (int i = 0; i < 10; i++) {
+            long boxedBytes = allocatedBytes();
+            long boxedNanos = timeBoxed(boxed);
+            boxedBytes = allocatedBytes() - boxedBytes;
+
+            long packedBytes = allocatedBytes();
+            long packedNanos = timePacked(packed);
+            packedBytes = allocatedBytes() - packedBytes;
+
+            System.out.printf("ConcurrentHashMap: %.2f ns, %.2f B/lookup   ConcurrentLongMap: %.2f ns, %.2f B/lookup%n",
+                              boxedNanos / (double) lookups(), boxedBytes / (double) lookups(),
+                              packedNanos / (double) lookups(), packedBytes / (double) lookups());
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long lookups() {
+        // Every lookup hits and misses once: a ring of 2 * RADIUS + 1 squared plus the same shifted away.
+        long side = 2L * RADIUS + 1;
+        return side * side * 2 * ROUNDS;
+    }
+
+    private static long timeBoxed(ConcurrentHashMap<LegacyCoord, Object> map) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int z = -RADIUS; z <= RADIUS; z++) {
+                for (int x = -RADIUS; x <= RADIUS; x++) {
+                    if (map.containsKey(new LegacyCoord(x, z))) found++;
+                    if (map.containsKey(new LegacyCoord(x + 1000, z))) found++;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found == 0) System.out.println();
+        return elapsed;
+    }
+
+    private static long timePacked(ConcurrentLongMap<Object> map) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int z = -RADIUS; z <= RADIUS; z++) {
+                for (int x = -RADIUS; x <= RADIUS; x++) {
+                    if (map.containsKey(ChunkCoord.pack(x, z))) found++;
+                    if (map.containsKey(ChunkCoord.pack(x + 1000, z))) found++;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found == 0) System.out.println();
+        return elapsed;
+    }
+}
@@ -0,0 +1,62 @@
+package jMonkeyEngine.Chunks;
+
+import jMonkeyEngine.Terrain.HeightMapGenerator;
+import jMonkeyEngine.Terrain.NoiseGraph;
+import java.util.Random;
+
+/**
+ * Times TerrainQuery.heightAt over two cached parents on one and on four threads.
+ */
+public class TerrainQueryBenchmark {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+    private static final int QUERIES = 2_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+        HeightMapGenerator generator = new HeightMapGenerator(946496062586794636L, PARENT_SIZE,
+                                                              layout.getParentSpan(), layout.getApron(),
+                                                              40, NoiseGraph.defaultTerrain().compile());
+        ChunkCache cache = new ChunkCache(Long.MAX_VALUE, 1, geom -> { });
+        cache.putHeightmap(new ChunkCoord(3, -1), generator.generateHeightmap(3, -1));
+        cache.putHeightmap(new ChunkCoord(4, -1), generator.generateHeightmap(4, -1));
+        TerrainQuery query = new TerrainQuery(cache, layout, 200);
+
+        float spacing = layout.getSampleSpacing();
+        float minX = layout.toWorld(3, layout.roadStart());
+        float width = 2 * layout.getParentSpan() * spacing;
+        float minZ = layout.toWorld(-1, layout.roadStart());
+        float depth = layout.getParentSpan() * spacing;
+        Random random = new Random(1);
+        float[] xs = new float[4096];
+        float[] zs = new float[4096];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = minX + random.nextFloat() * width;
+            zs[i] = minZ + random.nextFloat() * depth;
+        }
+        for (int threads : new int[]{1, 4}) {
+            for (int round = 0; round < 3; round++) {
+                Thread[] workers = new Thread[threads];
+                double[] sums = new double[threads];
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    final int worker = t;
+                    workers[t] = new Thread(() -> {
+                        double sum = 0;
+                        for (int i = 0; i < QUERIES / threads; i++) {
+                            sum += query.heightAt(xs[i & 4095], zs[i & 4095]);
+                        }
+                        sums[worker] = sum;
+                    });
+                    workers[t].start();
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%d thread(s): %.1f ns per heightAt (checksum %.0f)%n", threads,
+                                  nanos / (double) QUERIES, sums[0]);
+            }
+        }
+    }
+}
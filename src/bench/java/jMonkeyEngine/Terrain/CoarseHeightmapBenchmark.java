@@ -0,0 +1,38 @@
+package jMonkeyEngine.Terrain;
+
+import jMonkeyEngine.Chunks.ChunkLayout;
+
+/**
+ * Times the coarse pass of a parent and the refinement of one of its tiles against generating the
+ * full parent.
+ */
+public class CoarseHeightmapBenchmark {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+    private static final int COARSE_LOD = 2;
+
+    public static void main(String[] args) {
+        ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+        HeightMapGenerator generator = new HeightMapGenerator(946496062586794636L, PARENT_SIZE,
+                                                              layout.getParentSpan(), layout.getApron(), 40,
+                                                              NoiseGraph.defaultTerrain().compile());
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            RefinableHeightfield coarse = generator.generateCoarseHeightmap(i, 1, CHUNK_SIZE, 1 << COARSE_LOD);
+            long coarseNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            generator.refineTile(coarse, layout.childOrigin(0), layout.childOrigin(0));
+            long tileNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            generator.generateHeightmapSerial(i, 1);
+            long fullNanos = System.nanoTime() - start;
+
+            System.out.printf("Coarse parent %.1f ms, refine one tile %.1f ms, full parent %.1f ms "
+                                      + "(first pixel %.1fx sooner)%n",
+                              coarseNanos / 1e6, tileNanos / 1e6, fullNanos / 1e6,
+                              fullNanos / (double) coarseNanos);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package jMonkeyEngine.Terrain;
+
+import com.jme3.scene.Mesh;
+import com.jme3.texture.Texture2D;
+import jMonkeyEngine.Chunks.ChunkLayout;
+
+/**
+ * Times filling the height textures of a parent's children for displacement mode against
+ * building their full-detail meshes.
+ */
+public class DisplacementBenchmark {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+
+    public static void main(String[] args) {
+        ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+        HeightMapGenerator generator = new HeightMapGenerator(946496062586794636L, PARENT_SIZE,
+                                                              layout.getParentSpan(), layout.getApron(),
+                                                              40, NoiseGraph.defaultTerrain().compile());
+        TerrainGenerator meshes = new TerrainGenerator(null, null, null, null, null, null,
+                                                       CHUNK_SIZE, PARENT_SIZE, 40, 0L, 200);
+        Heightfield terrain = generator.generateHeightmap(0, 0);
+        int size = CHUNK_SIZE + 2;
+        float[] range = new float[2];
+        for (int round = 0; round < 5; round++) {
+            long textureNanos = 0;
+            long meshNanos = 0;
+            for (int z = 0; z < layout.getChildrenPerParent(); z++) {
+                for (int x = 0; x < layout.getChildrenPerParent(); x++) {
+                    int cx = layout.childOrigin(x);
+                    int cz = layout.childOrigin(z);
+                    long start = System.nanoTime();
+                    Texture2D texture = meshes.generateHeightTexture(terrain, cx, cz, range);
+                    textureNanos += System.nanoTime() - start;
+                    meshes.getBufferPool().release(texture.getImage().getData(0));
+
+                    start = System.nanoTime();
+                    Mesh mesh = meshes.generateChunkMesh(terrain, cx, cz, 0);
+                    meshNanos += System.nanoTime() - start;
+                    meshes.releaseMesh(mesh);
+                }
+            }
+            System.out.printf("25 children at full detail: height textures %.1f ms (%d KB each), "
+                                      + "meshes %.1f ms%n", textureNanos / 1e6, 4 * size * size / 1024,
+                              meshNanos / 1e6);
+        }
+    }
+}
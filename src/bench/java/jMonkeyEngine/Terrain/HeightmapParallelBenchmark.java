@@ -0,0 +1,24 @@
+package jMonkeyEngine.Terrain;
+
+/**
+ * Times the serial and the fork/join heightmap generation of the same parents.
+ */
+public class HeightmapParallelBenchmark {
+    public static void main(String[] args) {
+        HeightMapGenerator generator = new HeightMapGenerator(946496062586794636L, 1000, 40);
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            generator.generateHeightmapSerial(i, 0);
+            long serialNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            generator.generateHeightmap(i, 0);
+            long parallelNanos = System.nanoTime() - start;
+
+            System.out.printf("Serial %.1f ms, fork/join %.1f ms (%.1fx on %d cores)%n",
+                              serialNanos / 1e6, parallelNanos / 1e6,
+                              serialNanos / (double) parallelNanos,
+                              Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
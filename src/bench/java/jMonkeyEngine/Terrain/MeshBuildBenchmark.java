@@ -0,0 +1,202 @@
+package jMonkeyEngine.Terrain;
+
+import com.jme3.scene.Mesh;
+import com.jme3.util.BufferUtils;
+import jMonkeyEngine.Chunks.ChunkLayout;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares reading a parent's samples chunk by chunk, x fastest as the mesh builder does, from
+ * the old float[x][z] heightmap against the row-major Heightfield, and the old per-triangle vertex
+ * normals against the central differences the builder uses now. Then times the full mesh build
+ * for all children of a parent, with the heap it allocates and the collections it causes. The
+ * meshes are released after each round, as evicted chunks are, so later rounds build into pooled
+ * buffers.
+ */
+public class MeshBuildBenchmark {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+    private static final int ROUNDS = 20;
+    private static final int MAX_HEIGHT = 200;
+
+    public static void main(String[] args) {
+        ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+        HeightMapGenerator heightMap = new HeightMapGenerator(946496062586794636L, PARENT_SIZE,
+                                                              layout.getParentSpan(), layout.getApron(),
+                                                              40, NoiseGraph.defaultTerrain().compile());
+        Heightfield field = heightMap.generateHeightmap(0, 0);
+        float[][] legacy = new float[PARENT_SIZE][PARENT_SIZE];
+        for (int x = 0; x < PARENT_SIZE; x++) {
+            for (int z = 0; z < PARENT_SIZE; z++) {
+                legacy[x][z] = field.get(x, z);
+            }
+        }
+
+        TerrainGenerator generator = new TerrainGenerator(null, null, null, null, null, null,
+                                                          CHUNK_SIZE, PARENT_SIZE, 40, 0L, MAX_HEIGHT);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<Mesh> meshes = new ArrayList<>();
+        int[] samples = new int[CHUNK_SIZE];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            samples[i] = i;
+        }
+        float spacing = layout.getSampleSpacing();
+        float[] faceNormals = new float[3 * CHUNK_SIZE * CHUNK_SIZE];
+        FloatBuffer normals = BufferUtils.createFloatBuffer(3 * CHUNK_SIZE * CHUNK_SIZE);
+
+        for (int i = 0; i < 5; i++) {
+            long legacyNanos = 0;
+            long flatNanos = 0;
+            double sum = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                sum += gatherLegacy(legacy);
+                legacyNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                sum += gatherFlat(field);
+                flatNanos += System.nanoTime() - start;
+            }
+
+            long faceNanos = 0;
+            long centralNanos = 0;
+            double maxAngle = 0;
+            for (int z = 0; z < layout.getChildrenPerParent(); z++) {
+                for (int x = 0; x < layout.getChildrenPerParent(); x++) {
+                    int cx = layout.childOrigin(x);
+                    int cz = layout.childOrigin(z);
+                    long start = System.nanoTime();
+                    perTriangleNormals(field, cx, cz, spacing, faceNormals);
+                    faceNanos += System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    generator.computeNormals(field, cx, cz, samples, normals);
+                    centralNanos += System.nanoTime() - start;
+
+                    for (int n = 0; n < faceNormals.length; n += 3) {
+                        double dot = faceNormals[n] * normals.get(n) + faceNormals[n + 1] * normals.get(n + 1)
+                                + faceNormals[n + 2] * normals.get(n + 2);
+                        maxAngle = Math.max(maxAngle, Math.toDegrees(Math.acos(Math.min(1, dot))));
+                    }
+                }
+            }
+            System.out.printf("Normals, 25 children: per-triangle %.1f ms, central differences %.1f ms "
+                                      + "(%.1fx), at most %.1f degrees apart%n",
+                              faceNanos / 1e6, centralNanos / 1e6, faceNanos / (double) centralNanos,
+                              maxAngle);
+
+            long gcMillis = -collectionMillis();
+            long allocated = -threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int z = 0; z < layout.getChildrenPerParent(); z++) {
+                for (int x = 0; x < layout.getChildrenPerParent(); x++) {
+                    meshes.add(generator.generateChunkMesh(field, layout.childOrigin(x), layout.childOrigin(z), 0));
+                }
+            }
+            long meshNanos = System.nanoTime() - start;
+            allocated += threads.getCurrentThreadAllocatedBytes();
+            gcMillis += collectionMillis();
+            for (Mesh mesh : meshes) {
+                generator.releaseMesh(mesh);
+            }
+            meshes.clear();
+
+            System.out.printf("Gather parent: float[][] %.2f ms, Heightfield %.2f ms (%.1fx)   "
+                                      + "full mesh build, 25 children: %.1f ms, %.1f MB heap, "
+                                      + "%d ms in GC%s%n",
+                              legacyNanos / 1e6 / ROUNDS, flatNanos / 1e6 / ROUNDS,
+                              legacyNanos / (double) flatNanos, meshNanos / 1e6, allocated / 1e6,
+                              gcMillis, sum == 0 ? " " : "");
+        }
+        System.out.println(generator.getBufferPool());
+    }
+
+    private static long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += gc.getCollectionTime();
+        }
+        return millis;
+    }
+
+    /**
+     * The builder's old normals: the unit normal of every triangle of the full-detail grid summed
+     * into its three vertices, then normalised.
+     */
+    private static void perTriangleNormals(Heightfield terrain, int cx, int cz, float spacing, float[] normals) {
+        Arrays.fill(normals, 0f);
+        for (int z = 0; z < CHUNK_SIZE - 1; z++) {
+            for (int x = 0; x < CHUNK_SIZE - 1; x++) {
+                int topLeft = z * CHUNK_SIZE + x;
+                int topRight = topLeft + 1;
+                int bottomLeft = topLeft + CHUNK_SIZE;
+                int bottomRight = bottomLeft + 1;
+                float y00 = terrain.getHeight(cx + x, cz + z) * MAX_HEIGHT;
+                float y10 = terrain.getHeight(cx + x + 1, cz + z) * MAX_HEIGHT;
+                float y01 = terrain.getHeight(cx + x, cz + z + 1) * MAX_HEIGHT;
+                float y11 = terrain.getHeight(cx + x + 1, cz + z + 1) * MAX_HEIGHT;
+                addFaceNormal(normals, topLeft, bottomLeft, topRight, 0, y01 - y00, spacing, spacing, y10 - y00, 0);
+                addFaceNormal(normals, topRight, bottomLeft, bottomRight,
+                              -spacing, y01 - y10, spacing, 0, y11 - y10, spacing);
+            }
+        }
+        for (int n = 0; n < normals.length; n += 3) {
+            float length = (float) Math.sqrt(normals[n] * normals[n] + normals[n + 1] * normals[n + 1]
+                                                     + normals[n + 2] * normals[n + 2]);
+            normals[n] /= length;
+            normals[n + 1] /= length;
+            normals[n + 2] /= length;
+        }
+    }
+
+    // Adds the unit normal of the triangle with edges a and b from vertex i0 to all three vertices.
+    private static void addFaceNormal(float[] normals, int i0, int i1, int i2,
+                                      float ax, float ay, float az, float bx, float by, float bz) {
+        float nx = ay * bz - az * by;
+        float ny = az * bx - ax * bz;
+        float nz = ax * by - ay * bx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        normals[3 * i0] += nx; normals[3 * i0 + 1] += ny; normals[3 * i0 + 2] += nz;
+        normals[3 * i1] += nx; normals[3 * i1 + 1] += ny; normals[3 * i1 + 2] += nz;
+        normals[3 * i2] += nx; normals[3 * i2 + 1] += ny; normals[3 * i2 + 2] += nz;
+    }
+
+    private static double gatherLegacy(float[][] terrain) {
+        double sum = 0;
+        for (int cz = 0; cz + CHUNK_SIZE <= PARENT_SIZE; cz += CHUNK_SIZE) {
+            for (int cx = 0; cx + CHUNK_SIZE <= PARENT_SIZE; cx += CHUNK_SIZE) {
+                for (int z = 0; z < CHUNK_SIZE; z++) {
+                    for (int x = 0; x < CHUNK_SIZE; x++) {
+                        sum += terrain[cx + x][cz + z];
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static double gatherFlat(Heightfield terrain) {
+        double sum = 0;
+        short[] heights = terrain.getHeights();
+        for (int cz = 0; cz + CHUNK_SIZE <= PARENT_SIZE; cz += CHUNK_SIZE) {
+            for (int cx = 0; cx + CHUNK_SIZE <= PARENT_SIZE; cx += CHUNK_SIZE) {
+                for (int z = 0; z < CHUNK_SIZE; z++) {
+                    int row = terrain.index(cx, cz + z);
+                    for (int x = 0; x < CHUNK_SIZE; x++) {
+                        sum += Heightfield.decode(heights[row + x]);
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,43 @@
+package jMonkeyEngine.Terrain;
+
+/**
+ * Prints per-node timings for the default noise graph and for a richer example graph.
+ * NoiseGraphTest checks the default graph against the original hand-written expression.
+ */
+public class NoiseGraphBenchmark {
+    private static final int SIZE = 1000;
+    private static final double SCALE = 40;
+
+    public static void main(String[] args) {
+        long seed = 946496062586794636L;
+        HeightMapGenerator generator = new HeightMapGenerator(seed, SIZE, SCALE);
+
+        for (int i = 0; i < 3; i++) {
+            generator.getTerrainNoise().resetTimings();
+            long start = System.nanoTime();
+            generator.generateHeightmapSerial(i, 0);
+            System.out.printf("Default graph parent: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+        System.out.print(generator.getTerrainNoise().getTimings());
+
+        NoiseGraph rich = new NoiseGraph();
+        int hills = rich.fbm(0.05, 4, 2, 0.5f);
+        int warpX = rich.simplex(0.02, 7);
+        int warpY = rich.simplex(0.02, 8);
+        int mountains = rich.ridged(0.03, 3, 2, 0.5f);
+        int plains = rich.warpedSimplex(0.04, warpX, warpY, 3f);
+        int biome = rich.simplex(0.01, 9);
+        int shaped = rich.blend(rich.scale(rich.add(hills, plains), 0.5f), mountains, biome, -0.2f, 0.3f);
+        int height = rich.curve(shaped, new float[]{-1f, 0f, 0.5f, 1f}, new float[]{0f, 0.3f, 0.55f, 1f});
+        rich.clamp(height, 0f, 1f);
+
+        HeightMapGenerator richGenerator = new HeightMapGenerator(seed, SIZE, SCALE, rich.compile());
+        for (int i = 0; i < 3; i++) {
+            richGenerator.getTerrainNoise().resetTimings();
+            long start = System.nanoTime();
+            richGenerator.generateHeightmapSerial(i, 0);
+            System.out.printf("Example graph parent: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+        System.out.print(richGenerator.getTerrainNoise().getTimings());
+    }
+}
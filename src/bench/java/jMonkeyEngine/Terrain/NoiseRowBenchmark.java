@@ -0,0 +1,50 @@
+package jMonkeyEngine.Terrain;
+
+/**
+ * Compares evaluating a parent's worth of noise one OpenSimplex2.noise2 call per sample against
+ * OpenSimplex2.noise2Row per scanline, and reports how far apart the two results are.
+ */
+public class NoiseRowBenchmark {
+    private static final long SEED = 946496062586794636L;
+    private static final int SIZE = 1000;
+    private static final double FREQUENCY = 0.05f / 40.0;
+
+    public static void main(String[] args) {
+        float[] scalar = new float[SIZE * SIZE];
+        float[] rows = new float[SIZE * SIZE];
+
+        for (int i = 0; i < 10; i++) {
+            double x0 = i * (SIZE - 1) * FREQUENCY;
+
+            long start = System.nanoTime();
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    scalar[y * SIZE + x] = OpenSimplex2.noise2(SEED, x0 + x * FREQUENCY, y * FREQUENCY);
+                }
+            }
+            long scalarNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int y = 0; y < SIZE; y++) {
+                OpenSimplex2.noise2Row(SEED, x0, FREQUENCY, y * FREQUENCY, SIZE, rows, y * SIZE);
+            }
+            long rowNanos = System.nanoTime() - start;
+
+            float maxDiff = 0;
+            for (int j = 0; j < scalar.length; j++) {
+                maxDiff = Math.max(maxDiff, Math.abs(scalar[j] - rows[j]));
+            }
+
+            System.out.printf("noise2: %.2f ns/sample   noise2Row: %.2f ns/sample (%.2fx)   max diff %.2e%n",
+                              scalarNanos / (double) scalar.length, rowNanos / (double) rows.length,
+                              scalarNanos / (double) rowNanos, maxDiff);
+        }
+
+        HeightMapGenerator generator = new HeightMapGenerator(SEED, SIZE, 40);
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            generator.generateHeightmapSerial(i, 0);
+            System.out.printf("Serial parent heightmap: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package jMonkeyEngine.Terrain;
+
+import jMonkeyEngine.Chunks.ChunkLayout;
+import jMonkeyEngine.Road.Node;
+import jMonkeyEngine.Road.RoadGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Times flattening the road through one parent, each round on a fresh copy of the same terrain.
+ */
+public class RoadFlatteningBenchmark {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+
+    public static void main(String[] args) throws IOException {
+        ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+        HeightMapGenerator generator = new HeightMapGenerator(946496062586794636L, PARENT_SIZE,
+                                                              layout.getParentSpan(), layout.getApron(),
+                                                              40, NoiseGraph.defaultTerrain().compile());
+        Heightfield terrain = generator.generateHeightmap(0, 0);
+        List<Node> path = new RoadGenerator().getRoadPointsInParent(terrain, layout, PARENT_SIZE / 2,
+                                                                    PARENT_SIZE / 2, false);
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        terrain.writeTo(saved);
+        for (int i = 0; i < 5; i++) {
+            Heightfield target = Heightfield.readFrom(new ByteArrayInputStream(saved.toByteArray()));
+            long start = System.nanoTime();
+            generator.applyRoadFlattening(target, path, HeightMapGenerator.NO_ENTRY_HEIGHT);
+            System.out.printf("Flatten one parent: %.2f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package jMonkeyEngine.Chunks;
+
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.material.MatParamOverride;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.texture.Texture;
+import jMonkeyEngine.Terrain.Heightfield;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Memory-bounded cache of generated parent heightmaps and the child geometries built from them,
+ * one per level of detail.
+ * Parents are evicted least recently used first; ties go to the parent furthest from the player.
+ * A parent with children that are loaded (or still loading) is never evicted.
+ */
+public class ChunkCache {
+
+    private static class Entry {
+        final ChunkCoord coord;
+        final Heightfield heightmap;
+        final long heightmapBytes;
+        // Indexed by level of detail.
+        final ConcurrentLongMap<Geometry>[] children;
+        final AtomicLong childBytes = new AtomicLong();
+        volatile long lastUsed;
+        // Set under the entry's lock when trim drops it, so a child built meanwhile isn't added.
+        boolean evicted;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Entry(ChunkCoord coord, Heightfield heightmap, int lodLevels) {
+            this.coord = coord;
+            this.heightmap = heightmap;
+            this.heightmapBytes = estimateBytes(heightmap);
+            this.children = new ConcurrentLongMap[lodLevels];
+            for (int lod = 0; lod < lodLevels; lod++) {
+                children[lod] = new ConcurrentLongMap<>(32);
+            }
+        }
+
+        long bytes() {
+            return heightmapBytes + childBytes.get();
+        }
+    }
+
+    private final ConcurrentLongMap<Entry> entries = new ConcurrentLongMap<>();
+    private final long MAX_BYTES;
+    private final int LOD_LEVELS;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final Consumer<Geometry> onEvict;
+
+    /**
+     * @param onEvict called with every child geometry that leaves the cache so its native
+     *                resources can be released
+     */
+    public ChunkCache(long maxBytes, int lodLevels, Consumer<Geometry> onEvict) {
+        this.MAX_BYTES = maxBytes;
+        this.LOD_LEVELS = lodLevels;
+        this.onEvict = onEvict;
+    }
+
+    public Heightfield getHeightmap(ChunkCoord parent) {
+        Entry entry = entries.get(parent.key());
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        entry.lastUsed = clock.incrementAndGet();
+        return entry.heightmap;
+    }
+
+    /**
+     * Like getHeightmap, but doesn't count as a hit or miss or refresh the parent.
+     */
+    public Heightfield peekHeightmap(long parentKey) {
+        Entry entry = entries.get(parentKey);
+        return entry == null ? null : entry.heightmap;
+    }
+
+    public boolean containsHeightmap(ChunkCoord parent) {
+        return entries.containsKey(parent.key());
+    }
+
+    public void putHeightmap(ChunkCoord parent, Heightfield heightmap) {
+        Entry entry = new Entry(parent, heightmap, LOD_LEVELS);
+        entry.lastUsed = clock.incrementAndGet();
+        // Keep an existing entry: its heightmap is identical and its children may be on screen.
+        if (entries.putIfAbsent(parent.key(), entry) == null) {
+            usedBytes.addAndGet(entry.bytes());
+        }
+    }
+
+    public Geometry getChild(ChunkCoord parent, ChunkCoord child, int lod) {
+        Entry entry = entries.get(parent.key());
+        Geometry geom = entry == null ? null : entry.children[lod].get(child.key());
+        if (geom == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        entry.lastUsed = clock.incrementAndGet();
+        return geom;
+    }
+
+    /**
+     * Like getChild != null, but doesn't count as a hit or miss or refresh the parent.
+     */
+    public boolean containsChild(long parentKey, long childKey, int lod) {
+        Entry entry = entries.get(parentKey);
+        return entry != null && entry.children[lod].containsKey(childKey);
+    }
+
+    /**
+     * @return whether the geometry was kept; if not, the cache never releases it
+     */
+    public boolean putChild(ChunkCoord parent, ChunkCoord child, int lod, Geometry geom) {
+        Entry entry = entries.get(parent.key());
+        if (entry == null) {
+            // The parent was evicted while the child was being built; the geometry is still handed
+            // out to the caller, it just isn't kept around for later.
+            return false;
+        }
+        long bytes = estimateBytes(geom);
+        synchronized (entry) {
+            // First one wins; a duplicate built by a racing request is simply not cached. Nor is a
+            // child of a parent trim has just dropped, as when the parent was already gone.
+            if (entry.evicted || entry.children[lod].putIfAbsent(child.key(), geom) != null) {
+                return false;
+            }
+            entry.childBytes.addAndGet(bytes);
+            usedBytes.addAndGet(bytes);
+        }
+        entry.lastUsed = clock.incrementAndGet();
+        return true;
+    }
+
+    public void touch(long parentKey) {
+        Entry entry = entries.get(parentKey);
+        if (entry != null) {
+            entry.lastUsed = clock.incrementAndGet();
+        }
+    }
+
+    /**
+     * Evicts until the cache is back under its budget. Whole parents go first; if everything left
+     * is pinned, unused children of pinned parents are dropped instead.
+     */
+    public void trim(ChunkCoord playerParent, LongPredicate parentInUse, LongPredicate childInUse) {
+        while (usedBytes.get() > MAX_BYTES) {
+            Entry victim = null;
+            for (Entry entry : entries.values()) {
+                if (parentInUse.test(entry.coord.key())) continue;
+                if (victim == null || entry.lastUsed < victim.lastUsed
+                        || (entry.lastUsed == victim.lastUsed
+                            && distance(entry.coord, playerParent) > distance(victim.coord, playerParent))) {
+                    victim = entry;
+                }
+            }
+
+            if (victim == null) {
+                trimChildren(childInUse);
+                return;
+            }
+
+            synchronized (victim) {
+                if (entries.remove(victim.coord.key(), victim)) {
+                    victim.evicted = true;
+                    usedBytes.addAndGet(-victim.bytes());
+                    evictions.incrementAndGet();
+                    for (ConcurrentLongMap<Geometry> children : victim.children) {
+                        children.values().forEach(onEvict);
+                    }
+                }
+            }
+        }
+    }
+
+    private void trimChildren(LongPredicate childInUse) {
+        for (Entry entry : entries.values()) {
+            // Coarsest levels first: they are the cheapest to rebuild.
+            for (int lod = LOD_LEVELS - 1; lod >= 0; lod--) {
+                for (long childKey : entry.children[lod].keys()) {
+                    if (usedBytes.get() <= MAX_BYTES) return;
+                    if (childInUse.test(childKey)) continue;
+
+                    Geometry child;
+                    synchronized (entry) {
+                        child = entry.children[lod].remove(childKey);
+                        if (child != null) {
+                            long bytes = estimateBytes(child);
+                            entry.childBytes.addAndGet(-bytes);
+                            usedBytes.addAndGet(-bytes);
+                        }
+                    }
+                    if (child != null) {
+                        evictions.incrementAndGet();
+                        onEvict.accept(child);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int distance(ChunkCoord a, ChunkCoord b) {
+        return Math.max(Math.abs(a.x - b.x), Math.abs(a.z - b.z));
+    }
+
+    private static long estimateBytes(Heightfield heightmap) {
+        return 32L + 16L + heightmap.getByteSize();
+    }
+
+    private static long estimateBytes(Geometry geom) {
+        // Position, normal and road/skirt floats, and the positions and indices Bullet copies for
+        // the collision shape if the chunk has one. Indices and texcoords are shared by every
+        // chunk of the same level of detail; a displaced chunk shares its whole mesh and only
+        // owns its height texture.
+        Mesh mesh = geom.getMesh();
+        long vertexBytes = (long) mesh.getVertexCount() * (3 + 3 + 2) * 4;
+        for (MatParamOverride override : geom.getLocalMatParamOverrides().getArray()) {
+            if (override.getValue() instanceof Texture) {
+                vertexBytes = ((Texture) override.getValue()).getImage().getData(0).capacity();
+            }
+        }
+        long collisionBytes = geom.getControl(RigidBodyControl.class) == null
+                ? 0 : (long) mesh.getVertexCount() * 3 * 4 + (long) mesh.getTriangleCount() * 3 * 4;
+        return vertexBytes + collisionBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getMaxBytes() {
+        return MAX_BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChunkCache(%d/%d MB, hits=%d, misses=%d, evictions=%d)",
+                             usedBytes.get() >> 20, MAX_BYTES >> 20, hits.get(), misses.get(),
+                             evictions.get());
+    }
+}
@@ -1,7 +1,5 @@
 package jMonkeyEngine.Chunks;
 
-import java.util.Objects;
-
 public class ChunkCoord {
     public final int x;
     public final int z;
@@ -11,6 +9,22 @@ public class ChunkCoord {
         this.z = z;
     }
 
+    public static long pack(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int unpackZ(long key) {
+        return (int) key;
+    }
+
+    public long key() {
+        return pack(x, z);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
@@ -21,7 +35,7 @@ public class ChunkCoord {
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, z);
+        return Long.hashCode(key() * 0x9E3779B97F4A7C15L);
     }
 
     @Override
@@ -0,0 +1,98 @@
+package jMonkeyEngine.Chunks;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Render-thread queues for attaching finished chunks to, and detaching unloaded chunks from, the
+ * scene graph and physics space. Each frame it runs at most maxRemovals detaches and maxChunks
+ * attachments and stops early once maxMillis have been spent, so crossing a parent boundary is
+ * spread over several frames instead of one long hitch.
+ */
+public class ChunkIntegrator {
+    private final ConcurrentLinkedQueue<BooleanSupplier> pending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<BooleanSupplier> removals = new ConcurrentLinkedQueue<>();
+
+    private int maxChunks;
+    private int maxRemovals;
+    private float maxMillis;
+
+    private float lastFrameMillis;
+    private int lastFrameChunks;
+    private int lastFrameRemovals;
+    private float peakFrameMillis;
+
+    public ChunkIntegrator(int maxChunksPerFrame, int maxRemovalsPerFrame, float maxMillisPerFrame) {
+        setBudget(maxChunksPerFrame, maxRemovalsPerFrame, maxMillisPerFrame);
+    }
+
+    public void setBudget(int maxChunksPerFrame, int maxRemovalsPerFrame, float maxMillisPerFrame) {
+        this.maxChunks = Math.max(1, maxChunksPerFrame);
+        this.maxRemovals = Math.max(1, maxRemovalsPerFrame);
+        this.maxMillis = maxMillisPerFrame;
+    }
+
+    /**
+     * @param task runs on the render thread; returns false if it turned out to have nothing to do
+     *             (e.g. the chunk left the render ring), in which case it doesn't use up budget
+     */
+    public void enqueue(BooleanSupplier task) {
+        pending.add(task);
+    }
+
+    /**
+     * Queues a detach or release. Removals run in order, before attachments, under the same rules.
+     */
+    public void enqueueRemoval(BooleanSupplier task) {
+        removals.add(task);
+    }
+
+    public void update() {
+        long start = System.nanoTime();
+        long budgetNanos = (long) (maxMillis * 1_000_000);
+
+        // Each queue always gets at least one task so a tight time budget can't starve it.
+        lastFrameRemovals = drain(removals, maxRemovals, start, budgetNanos);
+        lastFrameChunks = drain(pending, maxChunks, start, budgetNanos);
+
+        lastFrameMillis = (System.nanoTime() - start) / 1_000_000f;
+        peakFrameMillis = Math.max(peakFrameMillis, lastFrameMillis);
+    }
+
+    private static int drain(ConcurrentLinkedQueue<BooleanSupplier> queue, int max, long start,
+                             long budgetNanos) {
+        int done = 0;
+        while (done < max && (done == 0 || System.nanoTime() - start < budgetNanos)) {
+            BooleanSupplier task = queue.poll();
+            if (task == null) break;
+            if (task.getAsBoolean()) {
+                done++;
+            }
+        }
+        return done;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public int getPendingRemovalCount() {
+        return removals.size();
+    }
+
+    public float getLastFrameMillis() {
+        return lastFrameMillis;
+    }
+
+    public int getLastFrameChunks() {
+        return lastFrameChunks;
+    }
+
+    public int getLastFrameRemovals() {
+        return lastFrameRemovals;
+    }
+
+    public float getPeakFrameMillis() {
+        return peakFrameMillis;
+    }
+}
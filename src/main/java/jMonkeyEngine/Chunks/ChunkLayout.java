@@ -0,0 +1,113 @@
+package jMonkeyEngine.Chunks;
+
+/**
+ * Where samples, children and parents sit in the world. Everything lives on one global sample
+ * grid, sample g at world g * (scale / 16):
+ * <ul>
+ * <li>child c covers samples c * (chunkSize - 1) to (c + 1) * (chunkSize - 1), so neighbouring
+ * children share their edge sample;</li>
+ * <li>parent p holds its children's samples plus an apron of real samples from the neighbouring
+ * parents on every side, for normals at the border. Parent-local sample x (heightmap and road
+ * node coordinates alike) is global sample p * parentSpan - apron + x.</li>
+ * </ul>
+ */
+public class ChunkLayout {
+    /**
+     * Roads cross a parent border straight along one row and level, this many samples either side
+     * of it. Further than the road's width and feather reach beyond the apron, so the samples two
+     * parents share only ever see the crossing, and both parents flatten it the same.
+     */
+    public static final int ROAD_CROSSING = 16;
+
+    private final int CHUNK_SIZE;
+    private final int PARENT_SIZE;
+    private final float SAMPLE_SPACING;
+    private final int CHILDREN;
+    private final int PARENT_SPAN;
+    private final int APRON;
+
+    public ChunkLayout(int chunkSize, int parentSize, float scale) {
+        CHUNK_SIZE = chunkSize;
+        PARENT_SIZE = parentSize;
+        SAMPLE_SPACING = scale / 16;
+        CHILDREN = parentSize / chunkSize;
+        PARENT_SPAN = CHILDREN * (chunkSize - 1);
+        APRON = (parentSize - PARENT_SPAN - 1) / 2;
+        if (APRON < 1) {
+            throw new IllegalArgumentException("Parent of " + parentSize + " samples has no room for an apron");
+        }
+    }
+
+    public int parentOf(int child) {
+        return Math.floorDiv(child, CHILDREN);
+    }
+
+    /**
+     * Parent-local sample where the child's first sample lies.
+     */
+    public int childOrigin(int child) {
+        return APRON + (child - parentOf(child) * CHILDREN) * (CHUNK_SIZE - 1);
+    }
+
+    /**
+     * Global sample index of the parent's local sample 0.
+     */
+    public int parentOrigin(int parent) {
+        return parent * PARENT_SPAN - APRON;
+    }
+
+    public int chunkAt(float world) {
+        return (int) Math.floor(world / ((CHUNK_SIZE - 1) * SAMPLE_SPACING));
+    }
+
+    public int parentAt(float world) {
+        return (int) Math.floor(world / (PARENT_SPAN * SAMPLE_SPACING));
+    }
+
+    /**
+     * World coordinate of a parent-local sample coordinate, e.g. a road node's x or y.
+     */
+    public float toWorld(int parent, float local) {
+        return (parentOrigin(parent) + local) * SAMPLE_SPACING;
+    }
+
+    public float toLocal(int parent, float world) {
+        return world / SAMPLE_SPACING - parentOrigin(parent);
+    }
+
+    /**
+     * Parent-local sample where the road enters a parent; the previous parent's road ends on the
+     * same global sample, at roadEnd().
+     */
+    public int roadStart() {
+        return APRON;
+    }
+
+    public int roadEnd() {
+        return APRON + PARENT_SPAN;
+    }
+
+    public int getChunkSize() {
+        return CHUNK_SIZE;
+    }
+
+    public int getParentSize() {
+        return PARENT_SIZE;
+    }
+
+    public int getChildrenPerParent() {
+        return CHILDREN;
+    }
+
+    public int getParentSpan() {
+        return PARENT_SPAN;
+    }
+
+    public int getApron() {
+        return APRON;
+    }
+
+    public float getSampleSpacing() {
+        return SAMPLE_SPACING;
+    }
+}
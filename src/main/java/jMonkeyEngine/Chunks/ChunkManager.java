@@ -5,14 +5,18 @@ import com.jme3.bullet.BulletAppState;
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
-import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import jMonkeyEngine.Road.RoadGenerator;
+import jMonkeyEngine.Terrain.HeightMapGenerator;
+import jMonkeyEngine.Terrain.Heightfield;
+import jMonkeyEngine.Terrain.RefinableHeightfield;
 import jMonkeyEngine.Terrain.TerrainGenerator;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChunkManager {
     private final Node rootNode;
@@ -21,169 +25,580 @@ public class ChunkManager {
     private final RoadGenerator road;
     private final SimpleApplication main;
     private final ExecutorService executor;
+    private final ChunkScheduler scheduler;
+    private final ChunkIntegrator integrator;
+    private final RoadPrefetcher prefetcher;
 
     private final int CHUNK_SIZE;
     private final int PARENT_SIZE;
     private final float SCALE;
-    private final int RENDER_DISTANCE;
+    private final ChunkLayout layout;
+    // Both can be changed at runtime (see StreamingTuner); the change is applied on the next update.
+    private int renderDistance;
+    private int lodBias;
+    // Chunks load inside renderDistance but only unload beyond renderDistance + UNLOAD_MARGIN, so
+    // driving back and forth along a ring edge doesn't thrash.
+    private static final int UNLOAD_MARGIN = 1;
+    // Levels of detail 0-3 keep every 1st, 2nd, 4th and 8th sample; only chunks within
+    // PHYSICS_DISTANCE are built at level 0 and get collision.
+    static final int LOD_LEVELS = 4;
+    private static final int PHYSICS_DISTANCE = 1;
+    // Parents are first generated exact only for meshes of this level and coarser; a child's
+    // samples are refined the first time it is built finer.
+    private static final int COARSE_LOD = 2;
 
-    Set<ChunkCoord> loadingChunks = ConcurrentHashMap.newKeySet();
-    Set<ChunkCoord> loadingHeightmaps = ConcurrentHashMap.newKeySet();
-    private final ConcurrentHashMap<ChunkCoord, Geometry> loadedChunks = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<ChunkCoord, ConcurrentHashMap<ChunkCoord, Geometry>> generatedChunks = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<ChunkCoord, float[][]> generatedHeightmaps = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<ChunkCoord, List<jMonkeyEngine.Road.Node>> generatedRoads =
-            new ConcurrentHashMap<>();
+    private static class ChunkRequest {
+        final ChunkCoord chunk;
+        final int lod;
+
+        ChunkRequest(ChunkCoord chunk, int lod) {
+            this.chunk = chunk;
+            this.lod = lod;
+        }
+    }
+
+    // All chunk registries are keyed by ChunkCoord.pack(x, z).
+    private final ConcurrentLongMap<ChunkRequest> loadingChunks = new ConcurrentLongMap<>();
+    private final ConcurrentLongMap<CompletableFuture<Heightfield>> loadingHeightmaps =
+            new ConcurrentLongMap<>();
+    private final ConcurrentLongMap<Geometry> loadedChunks = new ConcurrentLongMap<>();
+    // Chunks being built ahead of the car for the cache only; never attached from here.
+    private final ConcurrentLongMap<ChunkCoord> prefetchingChunks = new ConcurrentLongMap<>();
+    // How many entries the three registries above hold for each parent, so trim can tell a parent
+    // is in use without scanning them.
+    private final ConcurrentLongMap<AtomicInteger> parentRefs = new ConcurrentLongMap<>();
+    // Render-thread only: chunks that are requested or loaded, i.e. inside the unload ring.
+    private final LongHashSet visibleChunks;
+    private int lastPlayerChunkX;
+    private int lastPlayerChunkZ;
+    private boolean refreshNeeded = true;
+    private final ChunkCache cache;
+    private final TerrainQuery terrainQuery;
+    // Roads are tiny and can't be regenerated once the road generator has moved on, so they are
+    // kept for the whole session and re-applied when an evicted parent is rebuilt.
+    private final ConcurrentLongMap<List<jMonkeyEngine.Road.Node>> generatedRoads =
+            new ConcurrentLongMap<>();
+    // Road height smoothing carries on from one parent into the next, so each road's entry height
+    // is kept with it for rebuilds, and the newest road's exit height (guarded by road) seeds the
+    // next one.
+    private final ConcurrentLongMap<Float> roadEntryHeights = new ConcurrentLongMap<>();
+    private float roadExitHeight = HeightMapGenerator.NO_ENTRY_HEIGHT;
 
     public ChunkManager(BulletAppState bulletAppState, Node rootNode, RoadGenerator road,
                         TerrainGenerator generator, SimpleApplication main, ExecutorService executor,
-                        int chunkSize, int parentSize, float scale, int renderDistance) {
+                        int chunkSize, int parentSize, float scale, int renderDistance,
+                        long cacheBudgetBytes) {
         this.rootNode = rootNode;
         this.bulletAppState = bulletAppState;
         this.generator = generator;
         this.road = road;
         this.main = main;
         this.executor = executor;
+        this.scheduler = new ChunkScheduler(executor, (chunkSize - 1) * (scale / 16));
+        this.integrator = new ChunkIntegrator(2, 4, 4f);
         this.CHUNK_SIZE = chunkSize;
         this.PARENT_SIZE = parentSize;
         this.SCALE = scale;
-        this.RENDER_DISTANCE = renderDistance;
+        this.layout = generator.getLayout();
+        this.renderDistance = renderDistance;
+        this.cache = new ChunkCache(cacheBudgetBytes, LOD_LEVELS, geom -> integrator.enqueueRemoval(() -> {
+            generator.releaseGeometry(geom);
+            return true;
+        }));
+        this.terrainQuery = new TerrainQuery(cache, layout, generator.getMaxHeight());
+        int unloadSide = 2 * (renderDistance + UNLOAD_MARGIN) + 1;
+        this.visibleChunks = new LongHashSet(unloadSide * unloadSide);
+        this.prefetcher = new RoadPrefetcher(this, layout);
     }
 
     public void addChunk(ChunkCoord thisChunk, ConcurrentHashMap<ChunkCoord, Geometry> children,
-                         float[][] heightmap, List<jMonkeyEngine.Road.Node> nodes) {
+                         Heightfield heightmap, List<jMonkeyEngine.Road.Node> nodes,
+                         float roadEntryHeight, float roadExitHeight) {
+        cache.putHeightmap(thisChunk, heightmap);
         for (ChunkCoord chunk : children.keySet()) {
-            loadedChunks.put(chunk, children.get(chunk));
-        }
-        generatedChunks.put(thisChunk, children);
-        generatedHeightmaps.put(thisChunk, heightmap);
-        generatedRoads.put(thisChunk, nodes);
-    }
-
-    public void updateChunks(Vector3f playerPos) {
-        int playerChunkX = (int) Math.floor(playerPos.x / ((CHUNK_SIZE - 1) * (SCALE / 16)));
-        int playerChunkZ = (int) Math.floor(playerPos.z / ((CHUNK_SIZE - 1) * (SCALE / 16)));
-
-        Set<ChunkCoord> neededChunks = new HashSet<>();
-
-        for (int dz = -RENDER_DISTANCE; dz <= RENDER_DISTANCE; dz++) {
-            for (int dx = -RENDER_DISTANCE; dx <= RENDER_DISTANCE; dx++) {
-                int chunkX = playerChunkX + dx;
-                int chunkZ = playerChunkZ + dz;
-                final ChunkCoord chunk = new ChunkCoord(chunkX, chunkZ);
-
-                neededChunks.add(chunk);
-
-                if (!loadedChunks.containsKey(chunk) && !loadingChunks.contains(chunk)) {
-                    loadingChunks.add(chunk);
-                    executor.submit(() -> {
-                        try {
-                            Geometry chunkGeom;
-
-                            ChunkCoord parent = getParentChunk(chunk);
-
-                            if (!generatedHeightmaps.containsKey(parent) && !loadingHeightmaps.contains(parent)) {
-                                loadingHeightmaps.add(parent);
-                                float[][] terrain = generator.generateHeightMap(parent);
-                                if (parent.z == 0 && parent.x == road.currentXChunk) {
-                                    List<jMonkeyEngine.Road.Node> pathPoints =
-                                            road.getRoadPointsInChunk(terrain, 0, road.lastZCoord,
-                                                                      PARENT_SIZE - 1,
-                                                                      PARENT_SIZE / 2);
-                                    generator.updateHeightMap(terrain, pathPoints);
-                                    generatedRoads.put(parent, pathPoints);
-                                }
-                                generatedHeightmaps.put(parent, terrain);
-                                loadingHeightmaps.remove(parent);
-                            }
-
-                            ConcurrentHashMap<ChunkCoord, Geometry> children = new ConcurrentHashMap<>();
-                            if (generatedChunks.containsKey(parent)) {
-                                children = generatedChunks.get(parent);
-                            }
-
-                            if (children.containsKey(chunk)) {
-                                chunkGeom = children.get(chunk);
-                            } else {
-                                float[][] terrain = generatedHeightmaps.get(parent);
-                                if (terrain == null) {
-                                    loadingChunks.remove(chunk);
-                                    return;
-                                }
-                                chunkGeom = getChild(terrain, parent, chunk);
-
-                                if (generatedChunks.containsKey(parent)) {
-                                    generatedChunks.get(parent).put(chunk, chunkGeom);
-                                } else {
-                                    children.put(chunk, chunkGeom);
-                                    generatedChunks.put(parent, children);
-                                }
-
-                            }
-
-                            loadedChunks.put(chunk, chunkGeom);
-                            loadingChunks.remove(chunk);
-
-                            main.enqueue(() -> {
-                                rootNode.attachChild(chunkGeom);
-                                bulletAppState.getPhysicsSpace().add(
-                                        chunkGeom.getControl(RigidBodyControl.class));
+            if (loadedChunks.put(chunk.key(), children.get(chunk)) == null) {
+                retainParent(chunk.key());
+            }
+            cache.putChild(thisChunk, chunk, 0, children.get(chunk));
+        }
+        roadEntryHeights.put(thisChunk.key(), roadEntryHeight);
+        generatedRoads.put(thisChunk.key(), nodes);
+        synchronized (road) {
+            this.roadExitHeight = roadExitHeight;
+        }
+    }
 
-                            });
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    });
+    public void updateChunks(Vector3f playerPos, Vector3f playerVelocity) {
+        scheduler.updatePlayer(playerPos.x, playerPos.z, playerVelocity.x, playerVelocity.z);
+        integrator.update();
+        prefetcher.update(playerPos.x, playerPos.z, playerVelocity.x, playerVelocity.z);
+
+        int playerChunkX = layout.chunkAt(playerPos.x);
+        int playerChunkZ = layout.chunkAt(playerPos.z);
+
+        boolean moved = playerChunkX != lastPlayerChunkX || playerChunkZ != lastPlayerChunkZ;
+        if (!moved && !refreshNeeded) {
+            return;
+        }
+
+        if (refreshNeeded) {
+            refreshNeeded = false;
+            refreshChunks(playerChunkX, playerChunkZ);
+        } else {
+            updateRing(playerChunkX, playerChunkZ);
+        }
+
+        lastPlayerChunkX = playerChunkX;
+        lastPlayerChunkZ = playerChunkZ;
+
+        cache.trim(getParentChunk(new ChunkCoord(playerChunkX, playerChunkZ)), this::isParentInUse,
+                   this::isChunkInUse);
+    }
+
+    /**
+     * Only visits the strip of chunks that left the unload ring since the last crossing; the load
+     * square is rescanned because the level-of-detail rings move with the player.
+     */
+    private void updateRing(int playerChunkX, int playerChunkZ) {
+        int unloadDistance = renderDistance + UNLOAD_MARGIN;
+
+        // Unload chunks that are no longer needed
+        for (int z = lastPlayerChunkZ - unloadDistance; z <= lastPlayerChunkZ + unloadDistance; z++) {
+            for (int x = lastPlayerChunkX - unloadDistance; x <= lastPlayerChunkX + unloadDistance; x++) {
+                if (Math.abs(x - playerChunkX) <= unloadDistance
+                        && Math.abs(z - playerChunkZ) <= unloadDistance) continue;
+                long chunkKey = ChunkCoord.pack(x, z);
+                if (visibleChunks.remove(chunkKey)) {
+                    unloadChunk(chunkKey);
                 }
             }
         }
 
-        // Unload chunks that are no longer needed
-        loadedChunks.entrySet().removeIf(entry -> {
-            if (!neededChunks.contains(entry.getKey())) {
-                Geometry chunk = entry.getValue();
-                chunk.removeFromParent();
-                bulletAppState.getPhysicsSpace().remove(chunk);
+        for (int z = playerChunkZ - renderDistance; z <= playerChunkZ + renderDistance; z++) {
+            for (int x = playerChunkX - renderDistance; x <= playerChunkX + renderDistance; x++) {
+                boolean entered = visibleChunks.add(ChunkCoord.pack(x, z));
+                requestChunk(x, z, lodFor(x, z, playerChunkX, playerChunkZ), entered);
+            }
+        }
+    }
 
+    /**
+     * Full pass over the render ring, used on the first update and after the render distance or
+     * level-of-detail bias changed.
+     */
+    private void refreshChunks(int playerChunkX, int playerChunkZ) {
+        visibleChunks.clear();
+        for (int z = playerChunkZ - renderDistance; z <= playerChunkZ + renderDistance; z++) {
+            for (int x = playerChunkX - renderDistance; x <= playerChunkX + renderDistance; x++) {
+                visibleChunks.add(ChunkCoord.pack(x, z));
+                requestChunk(x, z, lodFor(x, z, playerChunkX, playerChunkZ), true);
+            }
+        }
+
+        for (long chunkKey : loadedChunks.keys()) {
+            if (Math.abs(ChunkCoord.unpackX(chunkKey) - playerChunkX) <= renderDistance + UNLOAD_MARGIN
+                    && Math.abs(ChunkCoord.unpackZ(chunkKey) - playerChunkZ) <= renderDistance + UNLOAD_MARGIN) {
+                visibleChunks.add(chunkKey);
+            } else {
+                unloadChunk(chunkKey);
+            }
+        }
+        for (long chunkKey : loadingChunks.keys()) {
+            if (!visibleChunks.contains(chunkKey)) {
+                cancelRequests(chunkKey);
+            }
+        }
+    }
+
+    /**
+     * Rings 0-1 around the player get full detail (and physics), ring 2 every 2nd sample, rings
+     * 3-4 every 4th and anything further every 8th. lodBias coarsens everything outside the
+     * physics ring by that many levels.
+     */
+    private int lodFor(int x, int z, int playerChunkX, int playerChunkZ) {
+        return lodForDistance(Math.max(Math.abs(x - playerChunkX), Math.abs(z - playerChunkZ)));
+    }
+
+    private int lodForDistance(int distance) {
+        if (distance <= PHYSICS_DISTANCE) {
+            return 0;
+        }
+        int lod = 32 - Integer.numberOfLeadingZeros(distance - 1) + lodBias;
+        return Math.min(LOD_LEVELS - 1, lod);
+    }
+
+    private static int getLod(Geometry geom) {
+        Integer lod = geom.getUserData("lod");
+        return lod == null ? 0 : lod;
+    }
+
+    private void unloadChunk(long chunkKey) {
+        cancelRequests(chunkKey);
+
+        Geometry geom = loadedChunks.remove(chunkKey);
+        if (geom != null) {
+            releaseParent(chunkKey);
+            integrator.enqueueRemoval(() -> {
+                if (loadedChunks.get(chunkKey) == geom) {
+                    // Came back into range before the removal was drained.
+                    return false;
+                }
+                geom.removeFromParent();
+                bulletAppState.getPhysicsSpace().remove(geom);
                 return true;
+            });
+        }
+    }
+
+    /**
+     * Drops any queued job for the chunk; jobs that are waiting on their parent or already running
+     * see their request token gone and skip scheduling or attaching.
+     */
+    private void cancelRequests(long chunkKey) {
+        // Load and prefetch jobs share the key, so clear both tokens whichever job was dropped.
+        scheduler.cancel(chunkKey);
+        if (loadingChunks.remove(chunkKey) != null) {
+            releaseParent(chunkKey);
+        }
+        if (prefetchingChunks.remove(chunkKey) != null) {
+            releaseParent(chunkKey);
+        }
+    }
+
+    /**
+     * Loads the chunk at the given level of detail, or swaps an already loaded chunk over to it.
+     * The old geometry stays on screen until the new one is attached.
+     *
+     * @param entered whether the chunk has just entered the render ring
+     */
+    private void requestChunk(int x, int z, int lod, boolean entered) {
+        long chunkKey = ChunkCoord.pack(x, z);
+        long parentKey = getParentKey(x, z);
+        cache.touch(parentKey);
+
+        Geometry loaded = loadedChunks.get(chunkKey);
+        ChunkRequest pending = loadingChunks.get(chunkKey);
+        if (pending != null && pending.lod == lod) {
+            return;
+        }
+        if (loaded != null && getLod(loaded) == lod) {
+            if (pending != null) {
+                // Was switching to another level, but the ring moved back first.
+                cancelRequests(chunkKey);
             }
+            return;
+        }
+        if (entered) {
+            prefetcher.recordArrival(cache.containsChild(parentKey, chunkKey, lod));
+        }
+
+        // The request instance is the token: if the chunk is unloaded or switches level again while
+        // the parent is still generating, only the newest request proceeds. Tokens are only ever
+        // put from the render thread, so replacing an older one here can't race.
+        final ChunkRequest request = new ChunkRequest(new ChunkCoord(x, z), lod);
+        if (loadingChunks.put(chunkKey, request) == null) {
+            retainParent(chunkKey);
+        }
+
+        final ChunkCoord parent = getParentChunk(request.chunk);
+        heightmapFuture(parent).whenComplete((terrain, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                if (loadingChunks.remove(chunkKey, request)) {
+                    releaseParent(chunkKey);
+                }
+                return;
+            }
+            if (loadingChunks.get(chunkKey) != request) {
+                return;
+            }
+            scheduler.submit(chunkKey, () -> buildChunk(request, parent, terrain));
+        });
+    }
+
+    private void buildChunk(ChunkRequest request, ChunkCoord parent, Heightfield terrain) {
+        ChunkCoord chunk = request.chunk;
+        try {
+            Geometry cachedGeom = cache.getChild(parent, chunk, request.lod);
+            final Geometry chunkGeom;
+            if (cachedGeom != null) {
+                chunkGeom = cachedGeom;
+            } else {
+                chunkGeom = getChild(terrain, parent, chunk, request.lod);
+                cache.putChild(parent, chunk, request.lod, chunkGeom);
+            }
+
+            integrator.enqueue(() -> {
+                if (!loadingChunks.remove(chunk.key(), request)) {
+                    // Left the render ring (or changed level again) while it was being built.
+                    return false;
+                }
+                releaseParent(chunk.key());
+                if (!visibleChunks.contains(chunk.key())) {
+                    return false;
+                }
+                Geometry previous = loadedChunks.put(chunk.key(), chunkGeom);
+                if (previous == null) {
+                    retainParent(chunk.key());
+                } else if (previous != chunkGeom) {
+                    previous.removeFromParent();
+                    bulletAppState.getPhysicsSpace().remove(previous);
+                }
+                rootNode.attachChild(chunkGeom);
+                RigidBodyControl body = chunkGeom.getControl(RigidBodyControl.class);
+                if (body != null) {
+                    bulletAppState.getPhysicsSpace().add(body);
+                }
+                return true;
+            });
+        } catch (Exception e) {
+            if (loadingChunks.remove(chunk.key(), request)) {
+                releaseParent(chunk.key());
+            }
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Builds a chunk into the cache without attaching it, so it is ready by the time it enters
+     * the render ring. Built at the level of detail of the ring's outer edge.
+     *
+     * @return true if a new build was started
+     */
+    boolean prefetchChunk(int x, int z) {
+        long chunkKey = ChunkCoord.pack(x, z);
+        long parentKey = getParentKey(x, z);
+        int lod = lodForDistance(renderDistance);
+        if (isChunkInUse(chunkKey) || cache.containsChild(parentKey, chunkKey, lod)) {
             return false;
+        }
+        final ChunkCoord chunk = new ChunkCoord(x, z);
+        if (prefetchingChunks.putIfAbsent(chunkKey, chunk) != null) {
+            return false;
+        }
+        retainParent(chunkKey);
+
+        final ChunkCoord parent = getParentChunk(chunk);
+        heightmapFuture(parent).whenComplete((terrain, error) -> {
+            if (error != null || prefetchingChunks.get(chunkKey) != chunk) {
+                finishPrefetch(chunkKey, chunk);
+                return;
+            }
+            scheduler.submit(chunkKey, () -> {
+                try {
+                    if (prefetchingChunks.get(chunkKey) == chunk
+                            && !cache.containsChild(parentKey, chunkKey, lod)) {
+                        Geometry geom = getChild(terrain, parent, chunk, lod);
+                        if (!cache.putChild(parent, chunk, lod, geom)) {
+                            // Nobody else holds it, so nothing else would release it.
+                            integrator.enqueueRemoval(() -> {
+                                generator.releaseGeometry(geom);
+                                return true;
+                            });
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    finishPrefetch(chunkKey, chunk);
+                }
+            });
         });
+        return true;
     }
 
-    private ChunkCoord getParentChunk(ChunkCoord childChunk) {
-        int parentX = Math.floorDiv(childChunk.x * CHUNK_SIZE, PARENT_SIZE);
-        int parentZ = Math.floorDiv(childChunk.z * CHUNK_SIZE, PARENT_SIZE);
-        return new ChunkCoord(parentX, parentZ);
+    /**
+     * Starts generating a parent heightmap (and the road through it) if it isn't already cached.
+     */
+    void prefetchParent(int parentX, int parentZ) {
+        ChunkCoord parent = new ChunkCoord(parentX, parentZ);
+        if (!cache.containsHeightmap(parent)) {
+            heightmapFuture(parent);
+        }
+    }
+
+    /**
+     * One shared future per parent heightmap: every child of an unloaded parent chains onto the
+     * same generation instead of polling for it.
+     */
+    private CompletableFuture<Heightfield> heightmapFuture(ChunkCoord parent) {
+        CompletableFuture<Heightfield> pending = loadingHeightmaps.get(parent.key());
+        if (pending != null) {
+            return pending;
+        }
+        Heightfield cached = cache.getHeightmap(parent);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<Heightfield> created = new CompletableFuture<>();
+        CompletableFuture<Heightfield> future = loadingHeightmaps.computeIfAbsent(parent.key(), key -> created);
+        if (future == created) {
+            executor.execute(() -> {
+                try {
+                    Heightfield terrain = cache.getHeightmap(parent);
+                    if (terrain == null) {
+                        terrain = generateParent(parent);
+                        cache.putHeightmap(parent, terrain);
+                    }
+                    created.complete(terrain);
+                } catch (Throwable t) {
+                    created.completeExceptionally(t);
+                } finally {
+                    loadingHeightmaps.remove(parent.key(), created);
+                }
+            });
+        }
+        return future;
+    }
+
+    private Heightfield generateParent(ChunkCoord parent) throws IOException {
+        RefinableHeightfield terrain = generator.generateCoarseHeightMap(parent, COARSE_LOD);
+        List<jMonkeyEngine.Road.Node> pathPoints = generatedRoads.get(parent.key());
+        if (pathPoints != null) {
+            // Rebuilding an evicted parent: no shared state, so any thread can do it.
+            generator.refineAlong(terrain, pathPoints);
+            generator.updateHeightMap(terrain, pathPoints, roadEntryHeights.get(parent.key()));
+        } else if (parent.z == 0) {
+            // The road is planned one parent at a time, each continuing from the last.
+            synchronized (road) {
+                if (parent.x == road.currentXChunk) {
+                    // Planned on the coarse pass: the search compares heights five samples apart,
+                    // which the interpolated detail barely changes.
+                    pathPoints = road.getRoadPointsInParent(terrain, layout, road.lastZCoord, PARENT_SIZE / 2,
+                                                            roadExitHeight != HeightMapGenerator.NO_ENTRY_HEIGHT);
+                    generator.refineAlong(terrain, pathPoints);
+                    float entryHeight = roadExitHeight;
+                    roadExitHeight = generator.updateHeightMap(terrain, pathPoints, entryHeight);
+                    roadEntryHeights.put(parent.key(), entryHeight);
+                    generatedRoads.put(parent.key(), pathPoints);
+                }
+            }
+        }
+        return terrain;
+    }
+
+    private boolean isChunkInUse(long chunkKey) {
+        return loadedChunks.containsKey(chunkKey) || loadingChunks.containsKey(chunkKey)
+                || prefetchingChunks.containsKey(chunkKey);
+    }
+
+    private boolean isParentInUse(long parentKey) {
+        if (loadingHeightmaps.containsKey(parentKey)) return true;
+        AtomicInteger refs = parentRefs.get(parentKey);
+        return refs != null && refs.get() > 0;
+    }
+
+    /**
+     * Counts an entry for the chunk just added to loadedChunks, loadingChunks or prefetchingChunks
+     * against its parent; releaseParent undoes it when the entry is removed. Counters stay in the
+     * map once created, like the roads, one per parent visited.
+     */
+    private void retainParent(long chunkKey) {
+        parentRefs.computeIfAbsent(getParentKey(chunkKey), key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private void releaseParent(long chunkKey) {
+        parentRefs.get(getParentKey(chunkKey)).decrementAndGet();
     }
 
-    public Geometry getChild(float[][] parentHeightmap, ChunkCoord parentCoord, ChunkCoord childCoord) {
-        int localChildX = childCoord.x - parentCoord.x * (PARENT_SIZE / CHUNK_SIZE);
-        int localChildZ = childCoord.z - parentCoord.z * (PARENT_SIZE / CHUNK_SIZE);
+    private void finishPrefetch(long chunkKey, ChunkCoord chunk) {
+        if (prefetchingChunks.remove(chunkKey, chunk)) {
+            releaseParent(chunkKey);
+        }
+    }
 
-        int cx = localChildX * CHUNK_SIZE;
-        int cz = localChildZ * CHUNK_SIZE;
+    private long getParentKey(long childKey) {
+        return getParentKey(ChunkCoord.unpackX(childKey), ChunkCoord.unpackZ(childKey));
+    }
 
-        Mesh mesh = generator.generateChunkMesh(parentHeightmap, cx, cz);
+    private long getParentKey(int childX, int childZ) {
+        return ChunkCoord.pack(layout.parentOf(childX), layout.parentOf(childZ));
+    }
 
-        return generator.createGeometry(childCoord, mesh);
+    private ChunkCoord getParentChunk(ChunkCoord childChunk) {
+        return new ChunkCoord(layout.parentOf(childChunk.x), layout.parentOf(childChunk.z));
     }
 
-    public float getHeight(int MAX_HEIGHT, int x, int z, ChunkCoord chunk) {
-        float[][] heightMap = generatedHeightmaps.get(chunk);
-        return (heightMap[x][z] - 2) * MAX_HEIGHT;
+    public Geometry getChild(Heightfield parentHeightmap, ChunkCoord parentCoord, ChunkCoord childCoord,
+                             int lod) {
+        int cx = layout.childOrigin(childCoord.x);
+        int cz = layout.childOrigin(childCoord.z);
+
+        if (lod < COARSE_LOD) {
+            generator.refineChunk(parentHeightmap, cx, cz);
+        }
+        return generator.buildChunk(parentHeightmap, childCoord, cx, cz, lod);
     }
 
     public Vector3f getCamDirection(float height) {
-        List<jMonkeyEngine.Road.Node> nodes = generatedRoads.get(new ChunkCoord(0, 0));
+        List<jMonkeyEngine.Road.Node> nodes = generatedRoads.get(ChunkCoord.pack(0, 0));
         jMonkeyEngine.Road.Node point = nodes.get(40);
-        System.out.println(point.x * (SCALE / 16));
-        System.out.println(point.y * (SCALE / 16));
-        return new Vector3f(point.x * (SCALE / 16), height - 15,
-                            point.y * (SCALE / 16));
+        System.out.println(layout.toWorld(0, point.x));
+        System.out.println(layout.toWorld(0, point.y));
+        return new Vector3f(layout.toWorld(0, point.x), height - 15, layout.toWorld(0, point.y));
     }
 
     public List<jMonkeyEngine.Road.Node> getRoadPoints(ChunkCoord chunk) {
-        return generatedRoads.get(chunk);
+        return generatedRoads.get(chunk.key());
+    }
+
+    List<jMonkeyEngine.Road.Node> getRoadPoints(long parentKey) {
+        return generatedRoads.get(parentKey);
+    }
+
+    public ChunkLayout getLayout() {
+        return layout;
+    }
+
+    public TerrainQuery getTerrainQuery() {
+        return terrainQuery;
+    }
+
+    public RoadPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    public int getRenderDistance() {
+        return renderDistance;
+    }
+
+    public void setRenderDistance(int renderDistance) {
+        if (renderDistance != this.renderDistance) {
+            this.renderDistance = renderDistance;
+            refreshNeeded = true;
+        }
+    }
+
+    public int getLodBias() {
+        return lodBias;
+    }
+
+    public void setLodBias(int lodBias) {
+        lodBias = Math.max(0, Math.min(LOD_LEVELS - 1, lodBias));
+        if (lodBias != this.lodBias) {
+            this.lodBias = lodBias;
+            refreshNeeded = true;
+        }
+    }
+
+    /**
+     * Chunk jobs waiting for a worker plus finished chunks waiting to be attached.
+     */
+    public int getQueueDepth() {
+        return scheduler.getQueueDepth() + integrator.getPendingCount();
+    }
+
+    public ChunkCache getCache() {
+        return cache;
+    }
+
+    public ChunkIntegrator getIntegrator() {
+        return integrator;
+    }
+
+    public void setIntegrationBudget(int maxChunksPerFrame, int maxRemovalsPerFrame,
+                                     float maxMillisPerFrame) {
+        integrator.setBudget(maxChunksPerFrame, maxRemovalsPerFrame, maxMillisPerFrame);
     }
 }
\ No newline at end of file
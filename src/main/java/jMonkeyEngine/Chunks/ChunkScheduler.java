@@ -0,0 +1,127 @@
+package jMonkeyEngine.Chunks;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs chunk jobs on the shared executor nearest-first instead of in submission order.
+ * Priorities are recomputed against the latest player position and velocity every time a worker
+ * picks its next job, so the queue reorders itself as the car moves. Jobs for chunks that left
+ * the render ring can be cancelled as long as they haven't started.
+ */
+public class ChunkScheduler {
+    // How far ahead along the velocity vector the scheduler looks when ranking chunks.
+    private static final float LOOKAHEAD_SECONDS = 3f;
+
+    private static class Job {
+        final long key;
+        final Runnable task;
+
+        Job(long key, Runnable task) {
+            this.key = key;
+            this.task = task;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final float CHUNK_WORLD_SIZE;
+
+    // Guarded by this. Small (a render ring's worth of jobs), so a linear scan for the best job is
+    // cheaper than keeping a heap ordered while every priority shifts each frame.
+    private final ArrayList<Job> queue = new ArrayList<>();
+
+    private volatile float playerX;
+    private volatile float playerZ;
+    private volatile float velocityX;
+    private volatile float velocityZ;
+
+    public ChunkScheduler(ExecutorService executor, float chunkWorldSize) {
+        this.executor = executor;
+        this.CHUNK_WORLD_SIZE = chunkWorldSize;
+    }
+
+    public void updatePlayer(float x, float z, float velX, float velZ) {
+        playerX = x / CHUNK_WORLD_SIZE;
+        playerZ = z / CHUNK_WORLD_SIZE;
+        velocityX = velX / CHUNK_WORLD_SIZE;
+        velocityZ = velZ / CHUNK_WORLD_SIZE;
+    }
+
+    public void submit(long chunkKey, Runnable task) {
+        synchronized (this) {
+            queue.add(new Job(chunkKey, task));
+        }
+        executor.execute(this::runNext);
+    }
+
+    /**
+     * Drops every job for the chunk that hasn't started yet.
+     *
+     * @return how many jobs were dropped
+     */
+    public synchronized int cancel(long chunkKey) {
+        int kept = 0;
+        for (int i = 0; i < queue.size(); i++) {
+            Job job = queue.get(i);
+            if (job.key != chunkKey) {
+                queue.set(kept++, job);
+            }
+        }
+        int dropped = queue.size() - kept;
+        queue.subList(kept, queue.size()).clear();
+        return dropped;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void runNext() {
+        Job job = poll();
+        if (job != null) {
+            job.task.run();
+        }
+    }
+
+    private synchronized Job poll() {
+        if (queue.isEmpty()) {
+            // A job was cancelled after its worker slot was handed out.
+            return null;
+        }
+
+        float px = playerX;
+        float pz = playerZ;
+        float aheadX = px + velocityX * LOOKAHEAD_SECONDS;
+        float aheadZ = pz + velocityZ * LOOKAHEAD_SECONDS;
+
+        int best = 0;
+        float bestPriority = Float.MAX_VALUE;
+        for (int i = 0; i < queue.size(); i++) {
+            long key = queue.get(i).key;
+            float cx = ChunkCoord.unpackX(key) + 0.5f;
+            float cz = ChunkCoord.unpackZ(key) + 0.5f;
+
+            // Distance to the car plus distance to where it will be: equal to twice the plain
+            // distance when standing still, stretched towards the heading when moving.
+            float priority = distance(cx, cz, px, pz) + distance(cx, cz, aheadX, aheadZ);
+            if (priority < bestPriority) {
+                bestPriority = priority;
+                best = i;
+            }
+        }
+
+        // Swap-remove; queue order doesn't matter since it is rescanned every time.
+        Job job = queue.get(best);
+        Job last = queue.remove(queue.size() - 1);
+        if (best < queue.size()) {
+            queue.set(best, last);
+        }
+        return job;
+    }
+
+    private static float distance(float ax, float az, float bx, float bz) {
+        float dx = ax - bx;
+        float dz = az - bz;
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+}
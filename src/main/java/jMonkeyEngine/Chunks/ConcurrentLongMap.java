@@ -0,0 +1,302 @@
+package jMonkeyEngine.Chunks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+/**
+ * Concurrent open-addressing map from primitive long keys (usually {@link ChunkCoord#pack}) to
+ * non-null values. The table is split into lock-striped segments; reads are optimistic and only
+ * fall back to a read lock if they raced with a writer, so lookups neither block nor allocate.
+ */
+public class ConcurrentLongMap<V> {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private static final class Table {
+        final long[] keys;
+        final Object[] values; // null marks an empty slot
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    private static final class Segment extends StampedLock {
+        private static final long serialVersionUID = 1L;
+
+        volatile Table table;
+        int size;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        Object find(long key, int hash) {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int i = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                Object value = t.values[i];
+                if (value == null) return null;
+                if (t.keys[i] == key) return value;
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        // Callers hold the write lock for all of the methods below.
+
+        int slotOf(long key, int hash) {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int i = hash & mask;
+            while (t.values[i] != null) {
+                if (t.keys[i] == key) return i;
+                i = (i + 1) & mask;
+            }
+            return -1 - i;
+        }
+
+        void insert(int freeSlot, long key, Object value) {
+            Table t = table;
+            t.keys[freeSlot] = key;
+            t.values[freeSlot] = value;
+            if (++size * 2 > t.keys.length) {
+                resize();
+            }
+        }
+
+        void delete(int slot) {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int gap = slot;
+            int j = slot;
+            while (true) {
+                j = (j + 1) & mask;
+                Object value = t.values[j];
+                if (value == null) break;
+                int home = hash(t.keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    t.keys[gap] = t.keys[j];
+                    t.values[gap] = value;
+                    gap = j;
+                }
+            }
+            t.values[gap] = null;
+            size--;
+        }
+
+        private void resize() {
+            Table old = table;
+            Table grown = new Table(old.keys.length * 2);
+            int mask = grown.keys.length - 1;
+            for (int i = 0; i < old.keys.length; i++) {
+                Object value = old.values[i];
+                if (value == null) continue;
+                int j = hash(old.keys[i]) & mask;
+                while (grown.values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                grown.keys[j] = old.keys[i];
+                grown.values[j] = value;
+            }
+            table = grown;
+        }
+    }
+
+    private final Segment[] segments;
+
+    public ConcurrentLongMap() {
+        this(64);
+    }
+
+    public ConcurrentLongMap(int expectedSize) {
+        int perSegment = Math.max(2, expectedSize * 2 / SEGMENTS);
+        int capacity = Integer.highestOneBit(perSegment - 1) << 1;
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (32 - SEGMENT_BITS)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.tryOptimisticRead();
+        Object value = segment.find(key, hash);
+        if (!segment.validate(stamp)) {
+            stamp = segment.readLock();
+            try {
+                value = segment.find(key, hash);
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+        return (V) value;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new NullPointerException();
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.writeLock();
+        try {
+            int slot = segment.slotOf(key, hash);
+            if (slot >= 0) {
+                Object previous = segment.table.values[slot];
+                segment.table.values[slot] = value;
+                return (V) previous;
+            }
+            segment.insert(-1 - slot, key, value);
+            return null;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value) {
+        if (value == null) throw new NullPointerException();
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.writeLock();
+        try {
+            int slot = segment.slotOf(key, hash);
+            if (slot >= 0) {
+                return (V) segment.table.values[slot];
+            }
+            segment.insert(-1 - slot, key, value);
+            return null;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * The mapping function runs under the segment's write lock, so it should be quick and must not
+     * touch this map.
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V existing = get(key);
+        if (existing != null) return existing;
+
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.writeLock();
+        try {
+            int slot = segment.slotOf(key, hash);
+            if (slot >= 0) {
+                return (V) segment.table.values[slot];
+            }
+            V value = mappingFunction.apply(key);
+            if (value != null) {
+                segment.insert(-1 - slot, key, value);
+            }
+            return value;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.writeLock();
+        try {
+            int slot = segment.slotOf(key, hash);
+            if (slot < 0) return null;
+            Object previous = segment.table.values[slot];
+            segment.delete(slot);
+            return (V) previous;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(long key, Object value) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.writeLock();
+        try {
+            int slot = segment.slotOf(key, hash);
+            if (slot < 0 || segment.table.values[slot] != value) return false;
+            segment.delete(slot);
+            return true;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.readLock();
+            size += segment.size;
+            segment.unlockRead(stamp);
+        }
+        return size;
+    }
+
+    /**
+     * Snapshot of the keys; allocates, so keep it off the per-frame path.
+     */
+    public long[] keys() {
+        long[] keys = new long[16];
+        int count = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.readLock();
+            try {
+                Table t = segment.table;
+                for (int i = 0; i < t.keys.length; i++) {
+                    if (t.values[i] == null) continue;
+                    if (count == keys.length) {
+                        keys = Arrays.copyOf(keys, count * 2);
+                    }
+                    keys[count++] = t.keys[i];
+                }
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    /**
+     * Snapshot of the values; allocates, so keep it off the per-frame path.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        for (Segment segment : segments) {
+            long stamp = segment.readLock();
+            try {
+                for (Object value : segment.table.values) {
+                    if (value != null) values.add((V) value);
+                }
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+        return values;
+    }
+}
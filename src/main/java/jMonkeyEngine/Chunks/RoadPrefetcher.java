@@ -0,0 +1,167 @@
+package jMonkeyEngine.Chunks;
+
+import jMonkeyEngine.Road.Node;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks the generated road ahead of the car, past the edge of the render ring by speed *
+ * HORIZON_SECONDS, and asks the chunk manager to build the chunks (and parents) the road runs
+ * through before they reach the ring. Chunks already inside the ring are skipped by the manager.
+ */
+public class RoadPrefetcher {
+    private static final float HORIZON_SECONDS = 8f;
+    // Still look a little way ahead when stopped, so the next stretch is ready on pull-away.
+    private static final float MIN_SPEED = 15f;
+    private static final long INTERVAL_NANOS = 250_000_000L;
+
+    private final ChunkManager manager;
+    private final ChunkLayout layout;
+
+    // Only touched from the render thread.
+    private final LongHashSet seen = new LongHashSet(64);
+    private long nextPassNanos;
+    private int lastNodeIndex;
+    private long lastParentKey = Long.MIN_VALUE;
+
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong arrivals = new AtomicLong();
+    private final AtomicLong readyArrivals = new AtomicLong();
+
+    public RoadPrefetcher(ChunkManager manager, ChunkLayout layout) {
+        this.manager = manager;
+        this.layout = layout;
+    }
+
+    public void update(float playerX, float playerZ, float velocityX, float velocityZ) {
+        long now = System.nanoTime();
+        if (now < nextPassNanos) {
+            return;
+        }
+        nextPassNanos = now + INTERVAL_NANOS;
+
+        float nodeScale = layout.getSampleSpacing();
+        float chunkWorldSize = (layout.getChunkSize() - 1) * nodeScale;
+
+        int parentX = layout.parentAt(playerX);
+        int parentZ = layout.parentAt(playerZ);
+        long parentKey = ChunkCoord.pack(parentX, parentZ);
+        List<Node> nodes = manager.getRoadPoints(parentKey);
+        if (nodes == null || nodes.isEmpty()) {
+            return;
+        }
+
+        float localX = layout.toLocal(parentX, playerX);
+        float localZ = layout.toLocal(parentZ, playerZ);
+        int index = nearestNode(nodes, localX, localZ, parentKey == lastParentKey ? lastNodeIndex : 0);
+        lastNodeIndex = index;
+        lastParentKey = parentKey;
+
+        float speed = (float) Math.sqrt(velocityX * velocityX + velocityZ * velocityZ);
+        float remaining = ((manager.getRenderDistance() + 1) * chunkWorldSize
+                + Math.max(speed, MIN_SPEED) * HORIZON_SECONDS) / nodeScale;
+
+        seen.clear();
+        // Walked in global samples.
+        float prevX = localX + layout.parentOrigin(parentX);
+        float prevZ = localZ + layout.parentOrigin(parentZ);
+        while (true) {
+            for (int i = index; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                float x = node.x + layout.parentOrigin(parentX);
+                float z = node.y + layout.parentOrigin(parentZ);
+                float dx = x - prevX;
+                float dz = z - prevZ;
+                remaining -= (float) Math.sqrt(dx * dx + dz * dz);
+                prevX = x;
+                prevZ = z;
+
+                int chunkX = layout.chunkAt(x * nodeScale);
+                int chunkZ = layout.chunkAt(z * nodeScale);
+                if (seen.add(ChunkCoord.pack(chunkX, chunkZ))) {
+                    if (manager.prefetchChunk(chunkX, chunkZ)) {
+                        issued.incrementAndGet();
+                    }
+                }
+
+                if (remaining <= 0) {
+                    return;
+                }
+            }
+
+            // Ran off the end of this parent's road: carry on into the next one, or get its
+            // heightmap (and with it the next stretch of road) started.
+            parentX++;
+            nodes = manager.getRoadPoints(ChunkCoord.pack(parentX, parentZ));
+            if (nodes == null || nodes.isEmpty()) {
+                manager.prefetchParent(parentX, parentZ);
+                return;
+            }
+            index = 0;
+        }
+    }
+
+    private static int nearestNode(List<Node> nodes, float x, float z, int hint) {
+        // The car only ever moves a few nodes between passes, so start from last time's answer and
+        // walk downhill; fall back to a full scan if that lands somewhere far away.
+        int best = Math.min(hint, nodes.size() - 1);
+        float bestDist = distanceSq(nodes.get(best), x, z);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = Math.max(0, best - 1); i <= Math.min(nodes.size() - 1, best + 1); i++) {
+                float d = distanceSq(nodes.get(i), x, z);
+                if (d < bestDist) {
+                    bestDist = d;
+                    best = i;
+                    improved = true;
+                }
+            }
+        }
+
+        if (bestDist > 100 * 100) {
+            for (int i = 0; i < nodes.size(); i++) {
+                float d = distanceSq(nodes.get(i), x, z);
+                if (d < bestDist) {
+                    bestDist = d;
+                    best = i;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static float distanceSq(Node node, float x, float z) {
+        float dx = node.x - x;
+        float dz = node.y - z;
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * Called whenever a chunk enters the render ring.
+     */
+    void recordArrival(boolean ready) {
+        arrivals.incrementAndGet();
+        if (ready) {
+            readyArrivals.incrementAndGet();
+        }
+    }
+
+    public long getIssued() {
+        return issued.get();
+    }
+
+    /**
+     * Share of chunks that were already built when they entered the render ring.
+     */
+    public float getHitRate() {
+        long total = arrivals.get();
+        return total == 0 ? 0 : readyArrivals.get() / (float) total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Prefetch: %d issued, %.0f%% ready on arrival (%d/%d)", issued.get(),
+                             getHitRate() * 100, readyArrivals.get(), arrivals.get());
+    }
+}
@@ -0,0 +1,120 @@
+package jMonkeyEngine.Chunks;
+
+/**
+ * Holds a target frame rate by trading view distance for speed. When frames run long, the chunk
+ * queue backs up or the heap fills, it first coarsens the distant levels of detail and then pulls
+ * the render distance in; when there is headroom again it undoes the same steps in reverse, so
+ * the render distance comes back before the detail does. The last adjustment and the numbers
+ * that caused it are shown on the debug overlay through toString.
+ */
+public class StreamingTuner {
+    // Frame time has to stay outside target +-15% before the tuner reacts.
+    private static final float SLOW_FACTOR = 1.15f;
+    private static final float FAST_FACTOR = 0.85f;
+    private static final float HEAP_HIGH = 0.85f;
+    private static final float HEAP_LOW = 0.6f;
+    // Growing waits longer than shrinking so the world doesn't pulse at the edge of the budget.
+    private static final float SHRINK_COOLDOWN = 2f;
+    private static final float GROW_COOLDOWN = 5f;
+    private static final float SMOOTHING = 0.05f;
+
+    private final ChunkManager manager;
+    private final float TARGET_FRAME_TIME;
+    private final int MIN_RENDER_DISTANCE;
+    private final int MAX_RENDER_DISTANCE;
+    private final int MAX_LOD_BIAS;
+    private final int QUEUE_HIGH;
+
+    private float averageFrameTime;
+    private float cooldown;
+    private String lastChange = "none";
+    private int changes;
+
+    public StreamingTuner(ChunkManager manager, int targetFps, int minRenderDistance,
+                          int maxRenderDistance, int maxLodBias) {
+        this.manager = manager;
+        this.TARGET_FRAME_TIME = 1f / targetFps;
+        this.MIN_RENDER_DISTANCE = minRenderDistance;
+        this.MAX_RENDER_DISTANCE = maxRenderDistance;
+        this.MAX_LOD_BIAS = maxLodBias;
+        // More than one ring edge's worth of chunks waiting means generation can't keep up.
+        this.QUEUE_HIGH = 2 * maxRenderDistance + 1;
+        this.averageFrameTime = TARGET_FRAME_TIME;
+        this.cooldown = GROW_COOLDOWN;
+    }
+
+    public void update(float tpf) {
+        averageFrameTime += (tpf - averageFrameTime) * SMOOTHING;
+        cooldown -= tpf;
+        if (cooldown > 0) {
+            return;
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        float heap = (runtime.totalMemory() - runtime.freeMemory()) / (float) runtime.maxMemory();
+        int queueDepth = manager.getQueueDepth();
+
+        String reason;
+        if (heap > HEAP_HIGH) {
+            reason = "heap above " + Math.round(HEAP_HIGH * 100) + "%";
+        } else if (averageFrameTime > TARGET_FRAME_TIME * SLOW_FACTOR) {
+            reason = "frame time above target";
+        } else if (queueDepth > QUEUE_HIGH) {
+            reason = "chunk queue above " + QUEUE_HIGH;
+        } else {
+            reason = null;
+        }
+
+        if (reason != null) {
+            shrink(reason, heap, queueDepth);
+        } else if (averageFrameTime < TARGET_FRAME_TIME * FAST_FACTOR && queueDepth < QUEUE_HIGH / 2
+                && heap < HEAP_LOW) {
+            grow(heap, queueDepth);
+        }
+    }
+
+    private void shrink(String reason, float heap, int queueDepth) {
+        int distance = manager.getRenderDistance();
+        int bias = manager.getLodBias();
+        if (bias < MAX_LOD_BIAS) {
+            manager.setLodBias(bias + 1);
+            log("LOD bias " + bias + " -> " + (bias + 1), reason, heap, queueDepth);
+        } else if (distance > MIN_RENDER_DISTANCE) {
+            manager.setRenderDistance(distance - 1);
+            log("render distance " + distance + " -> " + (distance - 1), reason, heap, queueDepth);
+        }
+        // Also when there was nothing left to give up, so that case is rechecked now and then
+        // rather than every frame.
+        cooldown = SHRINK_COOLDOWN;
+    }
+
+    private void grow(float heap, int queueDepth) {
+        int distance = manager.getRenderDistance();
+        int bias = manager.getLodBias();
+        String reason = "headroom";
+        if (distance < MAX_RENDER_DISTANCE) {
+            manager.setRenderDistance(distance + 1);
+            log("render distance " + distance + " -> " + (distance + 1), reason, heap, queueDepth);
+        } else if (bias > 0) {
+            manager.setLodBias(bias - 1);
+            log("LOD bias " + bias + " -> " + (bias - 1), reason, heap, queueDepth);
+        }
+        cooldown = GROW_COOLDOWN;
+    }
+
+    private void log(String change, String reason, float heap, int queueDepth) {
+        changes++;
+        lastChange = String.format("%s (%s: frame %.1f ms, queue %d, heap %.0f%%)", change, reason,
+                                   averageFrameTime * 1000, queueDepth, heap * 100);
+    }
+
+    public float getAverageFrameTime() {
+        return averageFrameTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Tuner: frame %.1f/%.1f ms, %d changes, last %s", averageFrameTime * 1000,
+                             TARGET_FRAME_TIME * 1000, changes, lastChange);
+    }
+}
@@ -0,0 +1,102 @@
+package jMonkeyEngine.Chunks;
+
+import com.jme3.math.Vector3f;
+import jMonkeyEngine.Terrain.Heightfield;
+
+/**
+ * Terrain height, normal and road lookups at any world position, straight from the cached parent
+ * heightfields; no geometry is needed. Heights are bilinear between samples, which is within a
+ * sample of the level-0 mesh's triangles.
+ * <p>
+ * Lookups don't lock, allocate or count as cache hits, so AI, spawning and the camera can query
+ * from any thread every frame. A position whose parent isn't cached has no answer: NaN, null or
+ * false. A sample in a tile that is being refined may read its coarse or its exact value.
+ */
+public class TerrainQuery {
+    private final ChunkCache cache;
+    private final ChunkLayout layout;
+    private final float MAX_HEIGHT;
+
+    public TerrainQuery(ChunkCache cache, ChunkLayout layout, float maxHeight) {
+        this.cache = cache;
+        this.layout = layout;
+        this.MAX_HEIGHT = maxHeight;
+    }
+
+    public boolean isLoaded(float worldX, float worldZ) {
+        return heightmapAt(worldX, worldZ) != null;
+    }
+
+    /**
+     * World height of the terrain (or road) surface, or NaN if the parent isn't cached.
+     */
+    public float heightAt(float worldX, float worldZ) {
+        Heightfield heightmap = heightmapAt(worldX, worldZ);
+        if (heightmap == null) {
+            return Float.NaN;
+        }
+        float localX = layout.toLocal(layout.parentAt(worldX), worldX);
+        float localZ = layout.toLocal(layout.parentAt(worldZ), worldZ);
+        int x = (int) Math.floor(localX);
+        int z = (int) Math.floor(localZ);
+        float fx = localX - x;
+        float fz = localZ - z;
+
+        float h00 = heightmap.getHeight(x, z);
+        float h10 = heightmap.getHeight(x + 1, z);
+        float h01 = heightmap.getHeight(x, z + 1);
+        float h11 = heightmap.getHeight(x + 1, z + 1);
+        float top = h00 + (h10 - h00) * fx;
+        float bottom = h01 + (h11 - h01) * fx;
+        return (top + (bottom - top) * fz) * MAX_HEIGHT;
+    }
+
+    /**
+     * Unit normal of the bilinear surface heightAt describes, or null if the parent isn't cached.
+     */
+    public Vector3f normalAt(float worldX, float worldZ, Vector3f store) {
+        Heightfield heightmap = heightmapAt(worldX, worldZ);
+        if (heightmap == null) {
+            return null;
+        }
+        float localX = layout.toLocal(layout.parentAt(worldX), worldX);
+        float localZ = layout.toLocal(layout.parentAt(worldZ), worldZ);
+        int x = (int) Math.floor(localX);
+        int z = (int) Math.floor(localZ);
+        float fx = localX - x;
+        float fz = localZ - z;
+
+        float h00 = heightmap.getHeight(x, z);
+        float h10 = heightmap.getHeight(x + 1, z);
+        float h01 = heightmap.getHeight(x, z + 1);
+        float h11 = heightmap.getHeight(x + 1, z + 1);
+        float scale = MAX_HEIGHT / layout.getSampleSpacing();
+        float slopeX = ((h10 - h00) * (1 - fz) + (h11 - h01) * fz) * scale;
+        float slopeZ = ((h01 - h00) * (1 - fx) + (h11 - h10) * fx) * scale;
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(-slopeX, 1, -slopeZ).normalizeLocal();
+    }
+
+    /**
+     * Whether the sample nearest the position is road; false if the parent isn't cached.
+     */
+    public boolean isRoad(float worldX, float worldZ) {
+        Heightfield heightmap = heightmapAt(worldX, worldZ);
+        if (heightmap == null) {
+            return false;
+        }
+        int x = Math.round(layout.toLocal(layout.parentAt(worldX), worldX));
+        int z = Math.round(layout.toLocal(layout.parentAt(worldZ), worldZ));
+        return heightmap.isRoad(heightmap.index(x, z));
+    }
+
+    /**
+     * The parent heightfield holding the position. Its own samples and the next one along each
+     * axis (its apron, at the far border) are all inside it, so every lookup stays in one parent.
+     */
+    private Heightfield heightmapAt(float worldX, float worldZ) {
+        return cache.peekHeightmap(ChunkCoord.pack(layout.parentAt(worldX), layout.parentAt(worldZ)));
+    }
+}
@@ -23,7 +23,9 @@ import com.jme3.renderer.Camera;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 import jMonkeyEngine.Chunks.ChunkCoord;
+import jMonkeyEngine.Chunks.ChunkLayout;
 import jMonkeyEngine.Chunks.ChunkManager;
+import jMonkeyEngine.Chunks.StreamingTuner;
 import jMonkeyEngine.Entities.Gtr;
 import jMonkeyEngine.Road.RoadGenerator;
 import jMonkeyEngine.Terrain.TerrainGenerator;
@@ -48,6 +50,7 @@ public class GameplayState extends BaseAppState implements ActionListener {
 
     TerrainGenerator generator;
     ChunkManager manager;
+    StreamingTuner tuner;
     RoadGenerator road;
 
     private Gtr sportsCar;
@@ -58,7 +61,7 @@ public class GameplayState extends BaseAppState implements ActionListener {
     private Node pauseMenuNode;
     private Node debugMenu;
 
-    private BitmapText speedText, frontLeftText, frontRightText, rearLeftText, rearRightText, chunkX, chunkZ, pauseText, startText;
+    private BitmapText speedText, frontLeftText, frontRightText, rearLeftText, rearRightText, chunkX, chunkZ, streamingText, prefetchText, tunerText, pauseText, startText;
 
     private boolean loadingDone = false;
     private boolean isPaused = false;
@@ -66,11 +69,23 @@ public class GameplayState extends BaseAppState implements ActionListener {
     private boolean started = false;
 
     private Vector3f cameraPos = new Vector3f();
+    private final Vector3f carVelocity = new Vector3f();
     private boolean followCam = false;
     private boolean gui = false;
 
     private final int CHUNK_SIZE = 1000;
     private final float SCALE = 40f;
+    private final int CACHE_BUDGET_MB = 512;
+    private final int MAX_CHUNK_ATTACHES_PER_FRAME = 2;
+    private final int MAX_CHUNK_DETACHES_PER_FRAME = 4;
+    private final float MAX_CHUNK_INTEGRATION_MILLIS = 4f;
+    private final int RENDER_DISTANCE = 3;
+    private final int MIN_RENDER_DISTANCE = 2;
+    private final int MAX_RENDER_DISTANCE = 8;
+    private final int MAX_LOD_BIAS = 2;
+    private final int TARGET_FPS = 60;
+    // Draw terrain as shared flat grids displaced on the GPU instead of a mesh per chunk.
+    private final boolean DISPLACEMENT_TERRAIN = false;
     private long SEED;
 
     @Override
@@ -110,16 +125,22 @@ public class GameplayState extends BaseAppState implements ActionListener {
         road = new RoadGenerator();
         generator = new TerrainGenerator(bulletAppState, gameplayRoot, assetManager, road, sapp, executor,
                                          200, CHUNK_SIZE, SCALE, SEED, 200);
+        generator.setDisplacement(DISPLACEMENT_TERRAIN);
         this.manager =
                 new ChunkManager(bulletAppState, gameplayRoot, road, generator, sapp, executor,
-                                 200, CHUNK_SIZE, SCALE, 2);
+                                 200, CHUNK_SIZE, SCALE, RENDER_DISTANCE,
+                                 CACHE_BUDGET_MB * 1024L * 1024L);
+        manager.setIntegrationBudget(MAX_CHUNK_ATTACHES_PER_FRAME, MAX_CHUNK_DETACHES_PER_FRAME,
+                                     MAX_CHUNK_INTEGRATION_MILLIS);
         generator.setChunkManager(manager);
+        tuner = new StreamingTuner(manager, TARGET_FPS, MIN_RENDER_DISTANCE, MAX_RENDER_DISTANCE,
+                                   MAX_LOD_BIAS);
 
         loadScene();
         System.out.println("loaded terrain");
 
         int zSpawn = (int) ((CHUNK_SIZE / 2) * (SCALE / 16));
-        float spawnHeight = manager.getHeight(200, 0, 500, new ChunkCoord(0, 0));
+        float spawnHeight = manager.getTerrainQuery().heightAt(5f, zSpawn);
         resetPoint = new Vector3f(5f, spawnHeight + 1f, zSpawn);
         System.out.println("got reset point");
 
@@ -181,7 +202,9 @@ public class GameplayState extends BaseAppState implements ActionListener {
 
         if (loadingDone) {
             VehicleControl control = sportsCar.getControl();
-            manager.updateChunks(sportsCar.getCarNode().getWorldTranslation());
+            tuner.update(tpf);
+            manager.updateChunks(sportsCar.getCarNode().getWorldTranslation(),
+                                 control.getLinearVelocity(carVelocity));
 
             // 1. Get current speed
             float speed = control.getCurrentVehicleSpeedKmHour();
@@ -238,12 +261,12 @@ public class GameplayState extends BaseAppState implements ActionListener {
             control.setAngularVelocity(new Vector3f(0,0,0));
 
             Vector3f carLocation = sportsCar.getCarNode().getWorldTranslation();
-            ChunkCoord currentChunk = new ChunkCoord(
-                    (int) (cam.getLocation().x / ((CHUNK_SIZE - 1) * (SCALE / 16))),
-                    (int) (cam.getLocation().z / ((CHUNK_SIZE - 1) * (SCALE / 16))));
+            ChunkLayout layout = manager.getLayout();
+            ChunkCoord currentChunk = new ChunkCoord(layout.parentAt(cam.getLocation().x),
+                                                     layout.parentAt(cam.getLocation().z));
             jMonkeyEngine.Road.Node carNode =
-                    new jMonkeyEngine.Road.Node((int) (carLocation.x / (SCALE / 16) - (currentChunk.x * (CHUNK_SIZE - 1f))),
-                                                (int) (carLocation.z / (SCALE / 16) - (currentChunk.z * (CHUNK_SIZE - 1f))));
+                    new jMonkeyEngine.Road.Node((int) layout.toLocal(currentChunk.x, carLocation.x),
+                                                (int) layout.toLocal(currentChunk.z, carLocation.z));
 
             List<jMonkeyEngine.Road.Node> roadNodes = manager.getRoadPoints(currentChunk);
             jMonkeyEngine.Road.Node nearestRoadPoint = getNearestRoadPoint(carNode, roadNodes,
@@ -251,10 +274,10 @@ public class GameplayState extends BaseAppState implements ActionListener {
             System.out.println(nearestRoadPoint);
             System.out.println(carNode);
 
-            float height = manager.getHeight(200, nearestRoadPoint.x, nearestRoadPoint.y, currentChunk);
-            Vector3f resetPoint =
-                    new Vector3f(nearestRoadPoint.x * (SCALE / 16) + (currentChunk.x * (CHUNK_SIZE - 1f) * (SCALE / 16)) + 1, height + 1,
-                                               nearestRoadPoint.y * (SCALE / 16) + (currentChunk.z * (CHUNK_SIZE - 1f) * (SCALE / 16)));
+            float resetX = layout.toWorld(currentChunk.x, nearestRoadPoint.x) + 1;
+            float resetZ = layout.toWorld(currentChunk.z, nearestRoadPoint.y);
+            Vector3f resetPoint = new Vector3f(resetX, manager.getTerrainQuery().heightAt(resetX, resetZ) + 1,
+                                               resetZ);
 
             sportsCar.getControl().setPhysicsLocation(resetPoint);
             sportsCar.getControl().setPhysicsRotation(new Quaternion().fromAngleAxis(FastMath.HALF_PI, Vector3f.UNIT_Y));
@@ -288,50 +311,65 @@ public class GameplayState extends BaseAppState implements ActionListener {
     private void loadGUI() {
         guiNode.attachChild(hud);
 
-        startText = new BitmapText(guiFont, false);
+        startText = new BitmapText(guiFont);
         startText.setSize(guiFont.getCharSet().getRenderedSize());
         startText.setText("Press 'C' to start");
         startText.setLocalTranslation(((float) cam.getWidth() / 2) - (startText.getLineWidth() / 2),
                                       (float) cam.getHeight() / 2, 0);
         hud.attachChild(startText);
 
-        speedText = new BitmapText(guiFont, false);
+        speedText = new BitmapText(guiFont);
         speedText.setSize(guiFont.getCharSet().getRenderedSize());
         speedText.setLocalTranslation(10, cam.getHeight() - 10, 0);
         hud.attachChild(speedText);
 
         hud.attachChild(debugMenu);
 
-        frontLeftText = new BitmapText(guiFont, false);
+        frontLeftText = new BitmapText(guiFont);
         frontLeftText.setSize(guiFont.getCharSet().getRenderedSize());
         frontLeftText.setLocalTranslation(10, cam.getHeight() - 50, 0);
         debugMenu.attachChild(frontLeftText);
 
-        frontRightText = new BitmapText(guiFont, false);
+        frontRightText = new BitmapText(guiFont);
         frontRightText.setSize(guiFont.getCharSet().getRenderedSize());
         frontRightText.setLocalTranslation(130, cam.getHeight() - 50, 0);
         debugMenu.attachChild(frontRightText);
 
-        rearLeftText = new BitmapText(guiFont, false);
+        rearLeftText = new BitmapText(guiFont);
         rearLeftText.setSize(guiFont.getCharSet().getRenderedSize());
         rearLeftText.setLocalTranslation(10, cam.getHeight() - 70, 0);
         debugMenu.attachChild(rearLeftText);
 
-        rearRightText = new BitmapText(guiFont, false);
+        rearRightText = new BitmapText(guiFont);
         rearRightText.setSize(guiFont.getCharSet().getRenderedSize());
         rearRightText.setLocalTranslation(130, cam.getHeight() - 70, 0);
         debugMenu.attachChild(rearRightText);
 
-        chunkX = new BitmapText(guiFont, false);
+        chunkX = new BitmapText(guiFont);
         chunkX.setSize(guiFont.getCharSet().getRenderedSize());
         chunkX.setLocalTranslation(cam.getWidth() - 100, cam.getHeight() - 10, 0);
         debugMenu.attachChild(chunkX);
 
-        chunkZ = new BitmapText(guiFont, false);
+        chunkZ = new BitmapText(guiFont);
         chunkZ.setSize(guiFont.getCharSet().getRenderedSize());
         chunkZ.setLocalTranslation(cam.getWidth() - 100, cam.getHeight() - 30, 0);
         debugMenu.attachChild(chunkZ);
 
+        streamingText = new BitmapText(guiFont);
+        streamingText.setSize(guiFont.getCharSet().getRenderedSize());
+        streamingText.setLocalTranslation(10, 30, 0);
+        debugMenu.attachChild(streamingText);
+
+        prefetchText = new BitmapText(guiFont);
+        prefetchText.setSize(guiFont.getCharSet().getRenderedSize());
+        prefetchText.setLocalTranslation(10, 50, 0);
+        debugMenu.attachChild(prefetchText);
+
+        tunerText = new BitmapText(guiFont);
+        tunerText.setSize(guiFont.getCharSet().getRenderedSize());
+        tunerText.setLocalTranslation(10, 70, 0);
+        debugMenu.attachChild(tunerText);
+
         guiLoaded = true;
     }
 
@@ -340,43 +378,58 @@ public class GameplayState extends BaseAppState implements ActionListener {
         debugMenu.detachAllChildren();
         pauseMenuNode.detachAllChildren();
 
-        speedText = new BitmapText(guiFont, false);
+        speedText = new BitmapText(guiFont);
         speedText.setSize(guiFont.getCharSet().getRenderedSize());
         speedText.setLocalTranslation(10, cam.getHeight() - 10, 0);
         hud.attachChild(speedText);
 
         hud.attachChild(debugMenu);
 
-        frontLeftText = new BitmapText(guiFont, false);
+        frontLeftText = new BitmapText(guiFont);
         frontLeftText.setSize(guiFont.getCharSet().getRenderedSize());
         frontLeftText.setLocalTranslation(10, cam.getHeight() - 50, 0);
         debugMenu.attachChild(frontLeftText);
 
-        frontRightText = new BitmapText(guiFont, false);
+        frontRightText = new BitmapText(guiFont);
         frontRightText.setSize(guiFont.getCharSet().getRenderedSize());
         frontRightText.setLocalTranslation(130, cam.getHeight() - 50, 0);
         debugMenu.attachChild(frontRightText);
 
-        rearLeftText = new BitmapText(guiFont, false);
+        rearLeftText = new BitmapText(guiFont);
         rearLeftText.setSize(guiFont.getCharSet().getRenderedSize());
         rearLeftText.setLocalTranslation(10, cam.getHeight() - 70, 0);
         debugMenu.attachChild(rearLeftText);
 
-        rearRightText = new BitmapText(guiFont, false);
+        rearRightText = new BitmapText(guiFont);
         rearRightText.setSize(guiFont.getCharSet().getRenderedSize());
         rearRightText.setLocalTranslation(130, cam.getHeight() - 70, 0);
         debugMenu.attachChild(rearRightText);
 
-        chunkX = new BitmapText(guiFont, false);
+        chunkX = new BitmapText(guiFont);
         chunkX.setSize(guiFont.getCharSet().getRenderedSize());
         chunkX.setLocalTranslation(cam.getWidth() - 100, cam.getHeight() - 10, 0);
         debugMenu.attachChild(chunkX);
 
-        chunkZ = new BitmapText(guiFont, false);
+        chunkZ = new BitmapText(guiFont);
         chunkZ.setSize(guiFont.getCharSet().getRenderedSize());
         chunkZ.setLocalTranslation(cam.getWidth() - 100, cam.getHeight() - 30, 0);
         debugMenu.attachChild(chunkZ);
 
+        streamingText = new BitmapText(guiFont);
+        streamingText.setSize(guiFont.getCharSet().getRenderedSize());
+        streamingText.setLocalTranslation(10, 30, 0);
+        debugMenu.attachChild(streamingText);
+
+        prefetchText = new BitmapText(guiFont);
+        prefetchText.setSize(guiFont.getCharSet().getRenderedSize());
+        prefetchText.setLocalTranslation(10, 50, 0);
+        debugMenu.attachChild(prefetchText);
+
+        tunerText = new BitmapText(guiFont);
+        tunerText.setSize(guiFont.getCharSet().getRenderedSize());
+        tunerText.setLocalTranslation(10, 70, 0);
+        debugMenu.attachChild(tunerText);
+
         hud.attachChild(pauseMenuNode);
         pauseText = new BitmapText(guiFont);
         pauseText.setText("Game Paused\nPress ESC to Resume\nPress Q to Quit");
@@ -488,6 +541,18 @@ public class GameplayState extends BaseAppState implements ActionListener {
                                      Math.floor(cam.getLocation().x / ((200 - 1) * (SCALE / 16)))));
         chunkZ.setText(String.format("Z Coord: %.1f",
                                      Math.floor(cam.getLocation().z / ((200 - 1) * (SCALE / 16)))));
+        streamingText.setText(String.format("Integrate: %.2f ms (+%d/-%d chunks, peak %.2f ms, %d/%d queued)",
+                                            manager.getIntegrator().getLastFrameMillis(),
+                                            manager.getIntegrator().getLastFrameChunks(),
+                                            manager.getIntegrator().getLastFrameRemovals(),
+                                            manager.getIntegrator().getPeakFrameMillis(),
+                                            manager.getIntegrator().getPendingCount(),
+                                            manager.getIntegrator().getPendingRemovalCount()));
+        prefetchText.setText(manager.getPrefetcher().toString()
+                             + String.format("   View: %d chunks, LOD bias %d, %d queued",
+                                             manager.getRenderDistance(), manager.getLodBias(),
+                                             manager.getQueueDepth()));
+        tunerText.setText(tuner.toString());
     }
 
     private void togglePause() {
@@ -1,5 +1,7 @@
 package jMonkeyEngine.Road;
 
+import jMonkeyEngine.Chunks.ChunkLayout;
+import jMonkeyEngine.Terrain.Heightfield;
 import java.util.*;
 
 public class RoadGenerator {
@@ -21,17 +23,39 @@ public class RoadGenerator {
         return offsets;
     }
 
-    public List<Node> getRoadPointsInChunk(float[][] heightmap, int startX, int startY, int goalX, int goalY) {
-        int rows = heightmap.length;
-        int cols = heightmap[0].length;
+    /**
+     * Plans the road through one parent between its border crossings (see
+     * ChunkLayout.ROAD_CROSSING) and runs it straight along its end rows across them: into the
+     * previous parent's apron if the road continues from one, and into the next one's at the end.
+     */
+    public List<Node> getRoadPointsInParent(Heightfield heightmap, ChunkLayout layout, int startY,
+                                            int goalY, boolean continued) {
+        List<Node> planned = getRoadPointsInChunk(heightmap, layout.roadStart() + ChunkLayout.ROAD_CROSSING,
+                                                  startY, layout.roadEnd() - ChunkLayout.ROAD_CROSSING, goalY);
+        if (planned.isEmpty()) {
+            return planned;
+        }
+        List<Node> path = new ArrayList<>(planned.size() + 2);
+        if (continued) {
+            path.add(new Node(0, startY));
+        }
+        path.addAll(planned);
+        path.add(new Node(heightmap.getWidth() - 1, planned.get(planned.size() - 1).y));
+        return path;
+    }
+
+    public List<Node> getRoadPointsInChunk(Heightfield heightmap, int startX, int startY, int goalX, int goalY) {
+        int rows = heightmap.getWidth();
+        int cols = heightmap.getDepth();
 
         PriorityQueue<Node> openSet = new PriorityQueue<>();
-        boolean[][] visited = new boolean[rows][cols];
-        Node[][] nodeMap = new Node[rows][cols];
+        // Indexed like the heightmap.
+        boolean[] visited = new boolean[rows * cols];
+        Node[] nodeMap = new Node[rows * cols];
 
         Node start = new Node(startX, startY, getRoadHeight(startX, startY, heightmap), 0, heuristic(startX, startY, goalX, goalY),null);
         openSet.add(start);
-        nodeMap[startX][startY] = start;
+        nodeMap[heightmap.index(startX, startY)] = start;
 
         while (!openSet.isEmpty()) {
             Node current = openSet.poll();
@@ -39,14 +63,14 @@ public class RoadGenerator {
                 return reconstructPath(current);
             }
 
-            visited[current.x][current.y] = true;
+            visited[heightmap.index(current.x, current.y)] = true;
 
             List<int[]> directions = generateOffsets(5);
             for (int[] dir : directions) {
                 int nx = current.x + dir[0];
                 int ny = current.y + dir[1];
 
-                if (nx >= 0 && ny >= 0 && nx < rows && ny < cols && !visited[nx][ny]) {
+                if (nx >= 0 && ny >= 0 && nx < rows && ny < cols && !visited[heightmap.index(nx, ny)]) {
                     int dx = dir[0];
                     int dy = dir[1];
 
@@ -62,7 +86,7 @@ public class RoadGenerator {
                     if (cosAngle > 0) {
                         float heightWeight = 10000.0f * (rows * 2);
 
-                        float heightDiff = Math.abs(heightmap[current.x][current.y] - heightmap[nx][ny]);
+                        float heightDiff = Math.abs(heightmap.get(current.x, current.y) - heightmap.get(nx, ny));
 
                         float distance = (float) Math.sqrt(dx * dx + dy * dy);
                         float baseCost = distance * 10f;
@@ -76,11 +100,11 @@ public class RoadGenerator {
 
                         float roadHeight = getRoadHeight(nx, ny, heightmap);
 
-                        Node neighbor = nodeMap[nx][ny];
+                        Node neighbor = nodeMap[heightmap.index(nx, ny)];
                         if (neighbor == null || tentativeG < neighbor.gCost) {
                             int h = heuristic(nx, ny, goalX, goalY);
                             neighbor = new Node(nx, ny, roadHeight, tentativeG, tentativeG + h, current, dx, dy);
-                            nodeMap[nx][ny] = neighbor;
+                            nodeMap[heightmap.index(nx, ny)] = neighbor;
                             openSet.add(neighbor);
                         }
                     }
@@ -91,29 +115,29 @@ public class RoadGenerator {
         return Collections.emptyList(); // No path found
     }
 
-    private float getRoadHeight(int x, int y, float[][] terrain) {
+    private float getRoadHeight(int x, int y, Heightfield terrain) {
         float points = 1;
         float sum = 0;
 
-        sum += terrain[x][y];
+        sum += terrain.get(x, y);
 
-        if (x + 1 < terrain.length) {
-            sum += terrain[x + 1][y];
+        if (x + 1 < terrain.getWidth()) {
+            sum += terrain.get(x + 1, y);
             points += 1;
         }
 
         if (x - 1 >= 0) {
-            sum += terrain[x - 1][y];
+            sum += terrain.get(x - 1, y);
             points += 1;
         }
 
-        if (y + 1 < terrain[0].length) {
-            sum += terrain[x][y + 1];
+        if (y + 1 < terrain.getDepth()) {
+            sum += terrain.get(x, y + 1);
             points += 1;
         }
 
         if (y - 1 >= 0) {
-            sum += terrain[x][y - 1];
+            sum += terrain.get(x, y - 1);
             points += 1;
         }
 
@@ -1,61 +1,340 @@
 package jMonkeyEngine.Terrain;
 
-import com.jme3.math.FastMath;
+import jMonkeyEngine.Chunks.ChunkLayout;
 import jMonkeyEngine.Road.Node;
 import jMonkeyEngine.Road.RoadGenerator;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import javax.imageio.ImageIO;
 
 public class HeightMapGenerator {
 
     private final long SEED;
     private final int CHUNK_SIZE;
+    // Samples between neighbouring parents' local sample 0, and how many samples of the
+    // neighbours each parent repeats on every side.
+    private final int PARENT_STRIDE;
+    private final int APRON;
     private final double SCALE;
-
-    float prevHeight = Float.MAX_VALUE;
+    // Rows per fork/join leaf task; about 32 leaves for a 1000-row parent.
+    private static final int TILE_ROWS = 32;
+    private final NoisePlan terrainNoise;
+    // How far road flattening reaches from a path node: half the road width, the blend feather
+    // and a sample of rounding.
+    private static final int ROAD_REACH = 8;
+    // Refining a tile also refines a sample beyond each of its borders, which edge normals read.
+    private static final int TILE_MARGIN = 1;
+
+    // Entry height for the first stretch of road, which has no previous stretch to continue from.
+    public static final float NO_ENTRY_HEIGHT = Float.MAX_VALUE;
+    // Flattening scratch, reused by each thread; only the road corridor's bounding box is used.
+    private static final ThreadLocal<RoadBand> ROAD_BANDS = ThreadLocal.withInitial(RoadBand::new);
 
     public HeightMapGenerator(long seed, int chunkSize, double scale) {
+        this(seed, chunkSize, scale, NoiseGraph.defaultTerrain().compile());
+    }
+
+    /**
+     * Parents that only share their edge sample and have no apron.
+     *
+     * @param terrainNoise maps world coordinates (sample index / scale) to heights in 0..1
+     */
+    public HeightMapGenerator(long seed, int chunkSize, double scale, NoisePlan terrainNoise) {
+        this(seed, chunkSize, chunkSize - 1, 0, scale, terrainNoise);
+    }
+
+    /**
+     * @param parentStride global samples from one parent's local sample 0 to the next one's
+     * @param apron        local sample 0 lies this many samples before the parent's own area
+     */
+    public HeightMapGenerator(long seed, int chunkSize, int parentStride, int apron, double scale,
+                              NoisePlan terrainNoise) {
         SEED = seed;
         CHUNK_SIZE = chunkSize;
+        PARENT_STRIDE = parentStride;
+        APRON = apron;
         SCALE = scale;
+        this.terrainNoise = terrainNoise;
     }
 
-    public float[][] generateHeightmap(int chunkX, int chunkZ) {
-        float[][] heightmap = new float[CHUNK_SIZE][CHUNK_SIZE];
+    public NoisePlan getTerrainNoise() {
+        return terrainNoise;
+    }
 
-        for (int x = 0; x < CHUNK_SIZE; x++) {
-            for (int y = 0; y < CHUNK_SIZE; y++) {
-                double worldX = (chunkX * (CHUNK_SIZE - 1) + x) / SCALE;
-                double worldY = (chunkZ * (CHUNK_SIZE - 1) + y) / SCALE;
+    /**
+     * Fills the parent in bands of TILE_ROWS rows on the fork/join pool. Every sample depends only
+     * on its own coordinates, so the result is bit-identical to generateHeightmapSerial.
+     */
+    public Heightfield generateHeightmap(int chunkX, int chunkZ) {
+        Heightfield heightmap = new Heightfield(CHUNK_SIZE, CHUNK_SIZE);
+        ForkJoinPool.commonPool().invoke(new TileTask(heightmap, chunkX, chunkZ, 0, CHUNK_SIZE));
+        return heightmap;
+    }
 
-                // === Terrain noise ===
-                float e = 40f * OpenSimplex2.noise2(SEED, 0.05f * worldX, 0.05f * worldY) +
-                        6f * OpenSimplex2.noise2(SEED, 0.25f * worldX, 0.25f * worldY) +
-                        0.9f * OpenSimplex2.noise2(SEED, 0.5f * worldX, 0.5f * worldY) +
-                        0.6f * OpenSimplex2.noise2(SEED, 0.75f * worldX, 0.75f * worldY);
-                e = e / (40f + 6f + 0.9f + 0.6f);
-                e = (e + 1f) / 2f;
-                e = FastMath.pow(e, 0.8f);
-                float terrainHeight = e;
+    public Heightfield generateHeightmapSerial(int chunkX, int chunkZ) {
+        Heightfield heightmap = new Heightfield(CHUNK_SIZE, CHUNK_SIZE);
+        fillRows(heightmap, chunkX, chunkZ, 0, CHUNK_SIZE);
+        return heightmap;
+    }
 
-                heightmap[x][y] = terrainHeight;
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Heightfield heightmap;
+        private final int chunkX;
+        private final int chunkZ;
+        private final int fromRow;
+        private final int toRow;
+
+        TileTask(Heightfield heightmap, int chunkX, int chunkZ, int fromRow, int toRow) {
+            this.heightmap = heightmap;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
 
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= TILE_ROWS) {
+                fillRows(heightmap, chunkX, chunkZ, fromRow, toRow);
+                return;
             }
+            int mid = (fromRow + toRow) >>> 1;
+            invokeAll(new TileTask(heightmap, chunkX, chunkZ, fromRow, mid),
+                      new TileTask(heightmap, chunkX, chunkZ, mid, toRow));
+        }
+    }
+
+    private void fillRows(Heightfield heightmap, int chunkX, int chunkZ, int fromRow, int toRow) {
+        fillRect(heightmap, chunkX, chunkZ, 0, CHUNK_SIZE, fromRow, toRow,
+                 terrainNoise.newRegisters(CHUNK_SIZE));
+    }
+
+    private void fillRect(Heightfield heightmap, int chunkX, int chunkZ, int fromX, int toX,
+                          int fromRow, int toRow, float[][] registers) {
+        float[] row = new float[toX - fromX];
+        double worldX0 = (chunkX * PARENT_STRIDE - APRON) / SCALE;
+        double step = 1 / SCALE;
+
+        for (int y = fromRow; y < toRow; y++) {
+            double worldY = (chunkZ * PARENT_STRIDE - APRON + y) / SCALE;
+            terrainNoise.evaluateRow(SEED, worldX0, step, worldY, fromX, 1, row.length, row, 0,
+                                     registers);
+            heightmap.setRow(heightmap.index(fromX, y), row, 0, row.length);
         }
+    }
 
+    /**
+     * The cheap first pass for a parent. Exact samples on each tile's lattice of every
+     * coarseStep-th row and column, which is all a mesh of that step reads, and within a sample of
+     * every tile border, which skirts and edge normals read; bilinear everywhere else. Exact
+     * samples are bit-identical to generateHeightmap's. Roughly 1 / coarseStep^2 of the noise work.
+     */
+    public RefinableHeightfield generateCoarseHeightmap(int chunkX, int chunkZ, int tileSize,
+                                                        int coarseStep) {
+        RefinableHeightfield heightmap = new RefinableHeightfield(CHUNK_SIZE, CHUNK_SIZE, chunkX,
+                                                                  chunkZ, tileSize, APRON, coarseStep);
+        float[][] registers = terrainNoise.newRegisters(CHUNK_SIZE);
+        boolean[] border = new boolean[CHUNK_SIZE];
+        boolean[] onLattice = new boolean[CHUNK_SIZE];
+        onLattice[0] = true;
+        onLattice[CHUNK_SIZE - 1] = true;
+        int tiles = heightmap.getTilesX();
+        // Per tile, the mesh builder's samples: every coarseStep-th up to the shared last one.
+        int perTile = (tileSize - 2) / coarseStep + 1;
+        for (int t = 0; t <= tiles; t++) {
+            int origin = APRON + t * (tileSize - 1);
+            for (int i = Math.max(0, origin - TILE_MARGIN);
+                 i <= Math.min(CHUNK_SIZE - 1, origin + TILE_MARGIN); i++) {
+                border[i] = true;
+                onLattice[i] = true;
+            }
+            if (t < tiles) {
+                for (int i = 0; i < perTile; i++) {
+                    onLattice[origin + i * coarseStep] = true;
+                }
+            }
+        }
+        int[] lattice = indicesOf(onLattice);
+        float[] tileRow = new float[perTile];
+        double worldX0 = (chunkX * PARENT_STRIDE - APRON) / SCALE;
+        double step = 1 / SCALE;
+        // Rows are interpolated at full precision and only quantised as they are stored: the two
+        // lattice rows either side of the rows in between, and the row being filled in.
+        float[] previous = new float[CHUNK_SIZE];
+        float[] current = new float[CHUNK_SIZE];
+        float[] between = new float[CHUNK_SIZE];
+
+        for (int l = 0; l < lattice.length; l++) {
+            int z = lattice[l];
+            double worldY = (chunkZ * PARENT_STRIDE - APRON + z) / SCALE;
+            if (border[z]) {
+                terrainNoise.evaluateRow(SEED, worldX0, step, worldY, 0, 1, CHUNK_SIZE, current, 0,
+                                         registers);
+            } else {
+                for (int t = 0; t < tiles; t++) {
+                    int origin = APRON + t * (tileSize - 1);
+                    terrainNoise.evaluateRow(SEED, worldX0, step, worldY, origin, coarseStep, perTile,
+                                             tileRow, 0, registers);
+                    for (int i = 0; i < perTile; i++) {
+                        current[origin + i * coarseStep] = tileRow[i];
+                    }
+                }
+                evaluateBorders(border, worldX0, step, worldY, current, registers);
+                if (!border[0]) {
+                    terrainNoise.evaluateRow(SEED, worldX0, step, worldY, 0, 1, 1, current, 0, registers);
+                }
+                if (!border[CHUNK_SIZE - 1]) {
+                    terrainNoise.evaluateRow(SEED, worldX0, step, worldY, CHUNK_SIZE - 1, 1, 1, current,
+                                             CHUNK_SIZE - 1, registers);
+                }
+                for (int i = 1; i < lattice.length; i++) {
+                    int from = lattice[i - 1];
+                    int to = lattice[i];
+                    for (int x = from + 1; x < to; x++) {
+                        float t = (x - from) / (float) (to - from);
+                        current[x] = current[from] + (current[to] - current[from]) * t;
+                    }
+                }
+            }
+            heightmap.setRow(heightmap.index(0, z), current, 0, CHUNK_SIZE);
+
+            if (l > 0) {
+                int from = lattice[l - 1];
+                for (int zz = from + 1; zz < z; zz++) {
+                    float t = (zz - from) / (float) (z - from);
+                    for (int x = 0; x < CHUNK_SIZE; x++) {
+                        between[x] = previous[x] + (current[x] - previous[x]) * t;
+                    }
+                    evaluateBorders(border, worldX0, step, (chunkZ * PARENT_STRIDE - APRON + zz) / SCALE,
+                                    between, registers);
+                    heightmap.setRow(heightmap.index(0, zz), between, 0, CHUNK_SIZE);
+                }
+            }
+            float[] swap = previous;
+            previous = current;
+            current = swap;
+        }
         return heightmap;
     }
 
-    public void applyRoadFlattening(float[][] heightmap, List<Node> roadPath) {
+    // Exact samples for each run of border columns in one row.
+    private void evaluateBorders(boolean[] border, double worldX0, double step, double worldY,
+                                 float[] row, float[][] registers) {
+        for (int x = 0; x < border.length; x++) {
+            if (!border[x]) continue;
+            int end = x;
+            while (end < border.length && border[end]) end++;
+            terrainNoise.evaluateRow(SEED, worldX0, step, worldY, x, 1, end - x, row, x, registers);
+            x = end;
+        }
+    }
+
+    private static int[] indicesOf(boolean[] flags) {
+        int count = 0;
+        for (boolean b : flags) {
+            if (b) count++;
+        }
+        int[] indices = new int[count];
+        for (int i = 0, n = 0; i < flags.length; i++) {
+            if (flags[i]) indices[n++] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * Replaces the interpolated samples of the tile holding (x, z), and of the sample beyond each
+     * of its borders, with exact ones, bit-identical to generateHeightmap's. Safe to call from
+     * several threads; only the first call does work.
+     *
+     * @return true if the tile was refined by this call
+     */
+    public boolean refineTile(RefinableHeightfield heightmap, int x, int z) {
+        int tile = heightmap.tileAt(x, z);
+        synchronized (heightmap.tileLock(tile)) {
+            if (heightmap.isRefined(tile)) {
+                return false;
+            }
+            int fromX = Math.max(0, heightmap.getTileX(tile) - TILE_MARGIN);
+            int toX = Math.min(CHUNK_SIZE, heightmap.getTileX(tile) + heightmap.getTileSize() + TILE_MARGIN);
+            int fromZ = Math.max(0, heightmap.getTileZ(tile) - TILE_MARGIN);
+            int toZ = Math.min(CHUNK_SIZE, heightmap.getTileZ(tile) + heightmap.getTileSize() + TILE_MARGIN);
+            fillRect(heightmap, heightmap.getParentX(), heightmap.getParentZ(), fromX, toX, fromZ,
+                     toZ, terrainNoise.newRegisters(toX - fromX));
+            heightmap.markRefined(tile);
+            return true;
+        }
+    }
+
+    /**
+     * Refines every tile whose refinement would reach samples that road flattening along the path
+     * reads or writes, so the road is laid on exact terrain and later refinement never
+     * overwrites it.
+     */
+    public void refineAlong(RefinableHeightfield heightmap, List<Node> roadPath) {
+        // Width of a tile's refinement, less one.
+        int span = heightmap.getTileSize() - 1 + 2 * TILE_MARGIN;
+        for (int i = 0; i < roadPath.size(); i++) {
+            // The whole segment to the next node, as flattening walks along it.
+            Node a = roadPath.get(i);
+            Node b = roadPath.get(Math.min(i + 1, roadPath.size() - 1));
+            int minX = Math.min(a.x, b.x) - ROAD_REACH;
+            int maxX = Math.max(a.x, b.x) + ROAD_REACH;
+            int minZ = Math.min(a.y, b.y) - ROAD_REACH;
+            int maxZ = Math.max(a.y, b.y) + ROAD_REACH;
+            for (int tz = 0; tz < heightmap.getTilesZ(); tz++) {
+                for (int tx = 0; tx < heightmap.getTilesX(); tx++) {
+                    int tile = heightmap.tile(tx, tz);
+                    int x0 = heightmap.getTileX(tile) - TILE_MARGIN;
+                    int z0 = heightmap.getTileZ(tile) - TILE_MARGIN;
+                    if (x0 <= maxX && x0 + span >= minX && z0 <= maxZ && z0 + span >= minZ) {
+                        refineTile(heightmap, heightmap.getTileX(tile), heightmap.getTileZ(tile));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flattens the road along the path into the heightmap. The road height is smoothed along the
+     * whole road, across parents: entryHeight is what the previous parent's call returned
+     * (NO_ENTRY_HEIGHT at the very start) and the return value is what to pass for the next one.
+     * On the border crossings (see ChunkLayout.ROAD_CROSSING) the road is held level at the height
+     * it crosses at, so the neighbouring parent, continuing from that height, flattens the samples
+     * both hold to the same values. Touches nothing but the heightmap, so parents can be flattened
+     * on several threads at once.
+     */
+    public float applyRoadFlattening(Heightfield heightmap, List<Node> roadPath, float entryHeight) {
+        if (roadPath.isEmpty()) {
+            return entryHeight;
+        }
         float roadWidth = 6f;
         float halfWidth = roadWidth / 2f;
-
-        float[][] targetHeights = new float[heightmap.length][heightmap[0].length];
-        boolean[][] hasTarget = new boolean[heightmap.length][heightmap[0].length];
+        float prevHeight = entryHeight;
+        float crossingIn = APRON + ChunkLayout.ROAD_CROSSING;
+        float crossingOut = APRON + PARENT_STRIDE - ChunkLayout.ROAD_CROSSING;
+
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        int minZ = Integer.MAX_VALUE, maxZ = Integer.MIN_VALUE;
+        for (Node node : roadPath) {
+            minX = Math.min(minX, node.x);
+            maxX = Math.max(maxX, node.x);
+            minZ = Math.min(minZ, node.y);
+            maxZ = Math.max(maxZ, node.y);
+        }
+        RoadBand band = ROAD_BANDS.get();
+        band.reset(Math.max(0, minX - ROAD_REACH), Math.max(0, minZ - ROAD_REACH),
+                   Math.min(heightmap.getWidth() - 1, maxX + ROAD_REACH),
+                   Math.min(heightmap.getDepth() - 1, maxZ + ROAD_REACH));
+        float[] targetHeights = band.targetHeights;
+        boolean[] hasTarget = band.hasTarget;
 
         for (int i = 0; i < roadPath.size() - 1; i++) {
             Node a = roadPath.get(i);
@@ -79,15 +358,20 @@ public class HeightMapGenerator {
                 float rx = cx - px * halfWidth;
                 float rz = cz - pz * halfWidth;
 
-                float count = 0;
-                float leftH = sampleHeight(heightmap, lx, lz);
-                if (leftH != 0) count++;
-                float rightH = sampleHeight(heightmap, rx, rz);
-                if (rightH != 0) count++;
-                float currHeight = (leftH + rightH) / count + 2;
-
-                if (prevHeight != Float.MAX_VALUE) {
-                    currHeight = prevHeight * 0.98f + currHeight * 0.02f;
+                float currHeight;
+                if (prevHeight != NO_ENTRY_HEIGHT && (cx <= crossingIn || cx >= crossingOut)) {
+                    currHeight = prevHeight;
+                } else {
+                    float count = 0;
+                    float leftH = sampleHeight(heightmap, lx, lz);
+                    if (leftH != 0) count++;
+                    float rightH = sampleHeight(heightmap, rx, rz);
+                    if (rightH != 0) count++;
+                    currHeight = (leftH + rightH) / count + 2;
+
+                    if (prevHeight != NO_ENTRY_HEIGHT) {
+                        currHeight = prevHeight * 0.98f + currHeight * 0.02f;
+                    }
                 }
 
                 prevHeight = currHeight;
@@ -99,98 +383,189 @@ public class HeightMapGenerator {
 
                     int x = Math.round(ix);
                     int z = Math.round(iz);
-                    if (x < 0 || z < 0 || x >= heightmap.length || z >= heightmap[0].length) continue;
-                    if (hasTarget[x][z]) continue;
+                    if (!heightmap.contains(x, z)) continue;
+                    int cell = band.index(x, z);
+                    if (hasTarget[cell]) continue;
 
-                    targetHeights[x][z] = targetHeight;
-                    hasTarget[x][z] = true;
+                    targetHeights[cell] = targetHeight;
+                    hasTarget[cell] = true;
                 }
             }
         }
 
-        for (int x = 0; x < heightmap.length; x++) {
-            for (int z = 0; z < heightmap[0].length; z++) {
-                if (hasTarget[x][z]) {
-                    heightmap[x][z] = targetHeights[x][z];
+        for (int z = band.z0; z < band.z0 + band.depth; z++) {
+            for (int x = band.x0; x < band.x0 + band.width; x++) {
+                int cell = band.index(x, z);
+                if (hasTarget[cell]) {
+                    heightmap.set(x, z, targetHeights[cell]);
                 }
             }
         }
 
-        smoothRoad(heightmap, hasTarget, targetHeights);
+        smoothRoad(heightmap, band);
+
+        blendTerrain(heightmap, band);
+        return prevHeight;
+    }
+
+    /**
+     * Road target heights for the bounding box of one stretch of road; cell (x, z) of the
+     * heightmap is at index(x, z). Grows as needed and is only cleared as far as it is used.
+     */
+    private static final class RoadBand {
+        int x0;
+        int z0;
+        int width;
+        int depth;
+        float[] targetHeights = new float[0];
+        boolean[] hasTarget = new boolean[0];
+        // Band index of the nearest road cell within feather reach, or -1; filled in by
+        // blendTerrain, which also uses queue for the cells still to pass it on.
+        int[] nearest = new int[0];
+        int[] queue = new int[0];
+
+        void reset(int x0, int z0, int x1, int z1) {
+            this.x0 = x0;
+            this.z0 = z0;
+            this.width = x1 - x0 + 1;
+            this.depth = z1 - z0 + 1;
+            int size = width * depth;
+            if (hasTarget.length < size) {
+                targetHeights = new float[size];
+                hasTarget = new boolean[size];
+                nearest = new int[size];
+            } else {
+                Arrays.fill(hasTarget, 0, size, false);
+            }
+        }
+
+        boolean contains(int x, int z) {
+            return x >= x0 && z >= z0 && x < x0 + width && z < z0 + depth;
+        }
 
-        blendTerrain(heightmap, hasTarget, targetHeights);
+        int index(int x, int z) {
+            return (z - z0) * width + (x - x0);
+        }
     }
 
-    private static void smoothRoad(float[][] heightmap, boolean[][] hasTarget,
-                                  float[][] targetHeights) {
-        for (int x = 1; x < heightmap.length - 1; x++) {
-            for (int z = 1; z < heightmap[0].length - 1; z++) {
-                if (hasTarget[x][z]) {
-                    float sum = targetHeights[x][z];
+    private static void smoothRoad(Heightfield heightmap, RoadBand band) {
+        float[] targetHeights = band.targetHeights;
+        boolean[] hasTarget = band.hasTarget;
+        int stride = band.width;
+        // Cells on the heightmap's border keep their target height, as they have no neighbours
+        // on one side; the band has ROAD_REACH of margin so every other road cell's neighbours
+        // are inside it.
+        for (int z = Math.max(1, band.z0); z < Math.min(heightmap.getDepth() - 1, band.z0 + band.depth); z++) {
+            for (int x = Math.max(1, band.x0); x < Math.min(heightmap.getWidth() - 1, band.x0 + band.width); x++) {
+                int i = band.index(x, z);
+                if (hasTarget[i]) {
+                    // Averaged as offsets from the cell's own height, so a level stretch stays
+                    // exactly level wherever the heightmap's border cuts it off.
+                    float height = targetHeights[i];
+                    float sum = 0;
                     int count = 1;
 
-                    if (hasTarget[x-1][z]) { sum += targetHeights[x-1][z]; count++; }
-                    if (hasTarget[x+1][z]) { sum += targetHeights[x+1][z]; count++; }
-                    if (hasTarget[x][z-1]) { sum += targetHeights[x][z-1]; count++; }
-                    if (hasTarget[x][z+1]) { sum += targetHeights[x][z+1]; count++; }
+                    if (hasTarget[i - 1]) { sum += targetHeights[i - 1] - height; count++; }
+                    if (hasTarget[i + 1]) { sum += targetHeights[i + 1] - height; count++; }
+                    if (hasTarget[i - stride]) { sum += targetHeights[i - stride] - height; count++; }
+                    if (hasTarget[i + stride]) { sum += targetHeights[i + stride] - height; count++; }
 
-                    heightmap[x][z] = sum / count;
+                    heightmap.set(x, z, height + sum / count);
                 }
             }
         }
     }
 
-    private static void blendTerrain(float[][] heightmap, boolean[][] hasTarget,
-                                  float[][] targetHeights) {
+    /**
+     * Feathers the terrain next to the road towards the height of the nearest road cell, fully at
+     * the road's edge and not at all featherRadius away. Nearest road cells come from a distance
+     * transform that spreads outwards from the road cells, each cell handing its nearest road
+     * cell on to its eight neighbours, and stops at featherRadius. The work follows the road's
+     * corridor, every cell is blended once, and as the road cells are seeded in scan order the
+     * result doesn't depend on the order they were laid down in.
+     */
+    private static void blendTerrain(Heightfield heightmap, RoadBand band) {
         int featherRadius = 4;
+        float[] targetHeights = band.targetHeights;
+        boolean[] hasTarget = band.hasTarget;
+        int[] nearest = band.nearest;
+        int width = band.width;
+        int depth = band.depth;
+        int size = width * depth;
+
+        Arrays.fill(nearest, 0, size, -1);
+        int[] queue = band.queue;
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            if (hasTarget[i]) {
+                if (tail == queue.length) queue = Arrays.copyOf(queue, Math.max(1024, tail * 2));
+                nearest[i] = i;
+                queue[tail++] = i;
+            }
+        }
 
-        for (int x = 0; x < heightmap.length; x++) {
-            for (int z = 0; z < heightmap[0].length; z++) {
-                if (hasTarget[x][z]) {
-                    float roadH = targetHeights[x][z] - 2;
-
-                    for (int dx = -featherRadius; dx <= featherRadius; dx++) {
-                        for (int dz = -featherRadius; dz <= featherRadius; dz++) {
-                            int nx = x + dx;
-                            int nz = z + dz;
-                            if (nx < 0 || nz < 0 || nx >= heightmap.length || nz >= heightmap[0].length) continue;
-                            if (hasTarget[nx][nz]) continue;
-
-                            float dist = (float)Math.sqrt(dx*dx + dz*dz);
-                            if (dist > featherRadius) continue;
-
-                            float t = dist / featherRadius;
-                            float originalH = heightmap[nx][nz];
-                            float blendedH = roadH * (1 - t) + originalH * t;
-
-                            heightmap[nx][nz] = blendedH;
-                        }
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+            int road = nearest[i];
+            int roadX = road % width;
+            int roadZ = road / width;
+            int x = i % width;
+            int z = i / width;
+            for (int nz = Math.max(0, z - 1); nz <= Math.min(depth - 1, z + 1); nz++) {
+                for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                    int n = nz * width + nx;
+                    int distSq = (nx - roadX) * (nx - roadX) + (nz - roadZ) * (nz - roadZ);
+                    if (distSq > featherRadius * featherRadius) continue;
+
+                    int current = nearest[n];
+                    if (current >= 0) {
+                        int cx = nx - current % width;
+                        int cz = nz - current / width;
+                        if (cx * cx + cz * cz <= distSq) continue;
                     }
+                    if (tail == queue.length) queue = Arrays.copyOf(queue, tail * 2);
+                    nearest[n] = road;
+                    queue[tail++] = n;
                 }
             }
         }
+        band.queue = queue;
+
+        for (int q = 0; q < tail; q++) {
+            int i = queue[q];
+            int road = nearest[i];
+            // A cell is queued again each time it finds a nearer road cell; blend it only once.
+            if (hasTarget[i] || road < 0) continue;
+            nearest[i] = -1;
+
+            int dx = i % width - road % width;
+            int dz = i / width - road / width;
+            float t = (float) Math.sqrt(dx * dx + dz * dz) / featherRadius;
+            int n = heightmap.index(band.x0 + i % width, band.z0 + i / width);
+            heightmap.setAt(n, (targetHeights[road] - 2) * (1 - t) + heightmap.getAt(n) * t);
+        }
     }
 
-    private float sampleHeight(float[][] map, float x, float z) {
+    private float sampleHeight(Heightfield map, float x, float z) {
         int ix = Math.round(x);
         int iz = Math.round(z);
-        if (ix < 0 || iz < 0 || ix >= map.length || iz >= map[0].length) return 0;
-        return map[ix][iz];
+        if (!map.contains(ix, iz)) return 0;
+        return map.get(ix, iz);
     }
 
-    private void setHeight(float[][] map, float x, float z, float height) {
+    private void setHeight(Heightfield map, float x, float z, float height) {
         int ix = Math.round(x);
         int iz = Math.round(z);
-        if (ix < 0 || iz < 0 || ix >= map.length || iz >= map[0].length) return;
-        map[ix][iz] = height;
+        if (!map.contains(ix, iz)) return;
+        map.set(ix, iz, height);
     }
 
-    public void generateImage(int chunkX, int chunkZ, float[][] heightmap) throws IOException {
+    public void generateImage(int chunkX, int chunkZ, Heightfield heightmap) throws IOException {
         BufferedImage image = new BufferedImage(CHUNK_SIZE, CHUNK_SIZE, BufferedImage.TYPE_INT_RGB);
 
         for (int x = 0; x < CHUNK_SIZE; x++) {
             for (int y = 0; y < CHUNK_SIZE; y++) {
-                double noiseValue = heightmap[x][y];
+                double noiseValue = heightmap.get(x, y);
                 int rgb;
                 if (noiseValue < 0.1)
                     rgb = new Color(0, 0, 255).getRGB();
@@ -235,9 +610,9 @@ public class HeightMapGenerator {
         HeightMapGenerator generator = new HeightMapGenerator(seed, chunkSize, scale);
         RoadGenerator road = new RoadGenerator();
 
-        float[][] heightmap = generator.generateHeightmap(0, 0);
+        Heightfield heightmap = generator.generateHeightmap(0, 0);
         List<Node> path = road.getRoadPointsInChunk(heightmap, 0, chunkSize / 2, chunkSize - 1, chunkSize / 2);
-        generator.applyRoadFlattening(heightmap, path);
+        generator.applyRoadFlattening(heightmap, path, NO_ENTRY_HEIGHT);
         generator.generateImage(0, 0, heightmap);
 
 //        for (int i = 0; i < heightmap.length; i++) {
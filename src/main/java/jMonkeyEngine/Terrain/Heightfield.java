@@ -0,0 +1,177 @@
+package jMonkeyEngine.Terrain;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+/**
+ * A grid of height samples stored row-major: sample (x, z) lives at index z * width + x, so
+ * walking along x reads consecutive memory.
+ * <p>
+ * Heights in 0..1 are quantised to unsigned 16-bit fractions of 1 (HEIGHT_STEP apart), and
+ * whether a sample is road is kept in a separate bitset, one bit per sample; about 2.1 bytes a
+ * sample instead of 4. get and set still speak the terrain code's float convention of road
+ * samples being height + 2: setting a value above 1.5 marks the sample as road and stores the
+ * value less 2, which is the height the mesh uses. Heights are clamped to 0..1 either way.
+ */
+public class Heightfield {
+    public static final float HEIGHT_STEP = 1f / 65535;
+    private static final int FORMAT_VERSION = 1;
+    // Atomic read-modify-write on the plain road mask words, which everything else reads directly.
+    private static final VarHandle ROAD_WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final short[] heights;
+    private final long[] roadMask;
+    private final int width;
+    private final int depth;
+
+    public Heightfield(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.heights = new short[width * depth];
+        this.roadMask = new long[(width * depth + 63) >>> 6];
+    }
+
+    public float get(int x, int z) {
+        return getAt(z * width + x);
+    }
+
+    public void set(int x, int z, float height) {
+        setAt(z * width + x, height);
+    }
+
+    /**
+     * Sample i in the float convention, height + 2 for road.
+     */
+    public float getAt(int i) {
+        float height = decode(heights[i]);
+        return isRoad(i) ? height + 2 : height;
+    }
+
+    /**
+     * Sets sample i from the float convention. Any thread may set any sample: 64 samples share a
+     * road mask word, so it is only written when the sample turns into road or back, and then
+     * atomically, so rows or tiles filled on several threads at once never lose each other's bits.
+     */
+    public void setAt(int i, float height) {
+        long bit = 1L << i;
+        int word = i >>> 6;
+        if (height > 1.5f) {
+            heights[i] = encode(height - 2);
+            if ((roadMask[word] & bit) == 0) {
+                ROAD_WORDS.getAndBitwiseOr(roadMask, word, bit);
+            }
+        } else {
+            heights[i] = encode(height);
+            if ((roadMask[word] & bit) != 0) {
+                ROAD_WORDS.getAndBitwiseAnd(roadMask, word, ~bit);
+            }
+        }
+    }
+
+    /**
+     * Stores count values from src, starting at sample i and running along the row.
+     */
+    public void setRow(int i, float[] src, int offset, int count) {
+        for (int n = 0; n < count; n++) {
+            setAt(i + n, src[offset + n]);
+        }
+    }
+
+    /**
+     * The height the mesh uses, 0..1, whether or not the sample is road.
+     */
+    public float getHeight(int x, int z) {
+        return decode(heights[z * width + x]);
+    }
+
+    public boolean isRoad(int i) {
+        return (roadMask[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public static short encode(float height) {
+        return (short) Math.round(Math.max(0f, Math.min(1f, height)) * 65535);
+    }
+
+    public static float decode(short height) {
+        return (height & 0xFFFF) * HEIGHT_STEP;
+    }
+
+    public int index(int x, int z) {
+        return z * width + x;
+    }
+
+    public boolean contains(int x, int z) {
+        return x >= 0 && z >= 0 && x < width && z < depth;
+    }
+
+    /**
+     * The quantised heights, for loops that decode rows directly. Row z starts at index(0, z).
+     */
+    public short[] getHeights() {
+        return heights;
+    }
+
+    /**
+     * Bit i % 64 of word i / 64 is set when sample i is road.
+     */
+    public long[] getRoadMask() {
+        return roadMask;
+    }
+
+    public long getByteSize() {
+        return 2L * heights.length + 8L * roadMask.length;
+    }
+
+    /**
+     * Writes the samples, as stored, to out. A RefinableHeightfield is written as it stands, so
+     * tiles that haven't been refined yet stay interpolated when read back.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(width);
+        data.writeInt(depth);
+        ByteBuffer bytes = ByteBuffer.allocate(2 * heights.length + 8 * roadMask.length);
+        bytes.asShortBuffer().put(heights);
+        bytes.position(2 * heights.length);
+        bytes.asLongBuffer().put(roadMask);
+        data.write(bytes.array());
+        data.flush();
+    }
+
+    public static Heightfield readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int version = data.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown heightfield format " + version);
+        }
+        Heightfield heightfield = new Heightfield(data.readInt(), data.readInt());
+        byte[] bytes = new byte[2 * heightfield.heights.length + 8 * heightfield.roadMask.length];
+        data.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.asShortBuffer().get(heightfield.heights);
+        buffer.position(2 * heightfield.heights.length);
+        buffer.asLongBuffer().get(heightfield.roadMask);
+        return heightfield;
+    }
+
+    /**
+     * Number of samples along x, which is also the stride between rows.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Number of samples along z.
+     */
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,116 @@
+package jMonkeyEngine.Terrain;
+
+import com.jme3.util.BufferUtils;
+import jMonkeyEngine.Chunks.ConcurrentLongMap;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct buffers of released chunk meshes (and height textures), kept for the next chunk that
+ * needs one of the same size, so streaming chunks in and out doesn't allocate and free direct
+ * memory for every chunk. Chunks only come in a few sizes (one set per level of detail), so
+ * buffers are shelved by exact capacity. Beyond MAX_BYTES released buffers are freed instead of
+ * kept.
+ * <p>
+ * Only hand back buffers that nothing will read again: the renderer only deletes the GL copy of
+ * a disposed buffer, and the collision shape keeps its own copy of the mesh.
+ */
+public class MeshBufferPool {
+    private final long MAX_BYTES;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    // Keyed by capacity * 4, plus 0 for float, 1 for int and 2 for byte buffers.
+    private final ConcurrentLongMap<ArrayDeque<Buffer>> shelves = new ConcurrentLongMap<>();
+
+    public MeshBufferPool(long maxBytes) {
+        this.MAX_BYTES = maxBytes;
+    }
+
+    public FloatBuffer floats(int capacity) {
+        FloatBuffer buffer = (FloatBuffer) take(4L * capacity, 4L * capacity);
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            return BufferUtils.createFloatBuffer(capacity);
+        }
+        return buffer;
+    }
+
+    public IntBuffer ints(int capacity) {
+        IntBuffer buffer = (IntBuffer) take(4L * capacity + 1, 4L * capacity);
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            return BufferUtils.createIntBuffer(capacity);
+        }
+        return buffer;
+    }
+
+    public ByteBuffer bytes(int capacity) {
+        ByteBuffer buffer = (ByteBuffer) take(4L * capacity + 2, capacity);
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            return BufferUtils.createByteBuffer(capacity);
+        }
+        return buffer;
+    }
+
+    /**
+     * Takes a float, int or byte buffer back for reuse, or frees it if the pool is full.
+     */
+    public void release(Buffer buffer) {
+        int kind = buffer instanceof FloatBuffer ? 0 : buffer instanceof IntBuffer ? 1
+                : buffer instanceof ByteBuffer ? 2 : -1;
+        long bytes = kind == 2 ? buffer.capacity() : 4L * buffer.capacity();
+        boolean poolable = kind >= 0;
+        if (!poolable || pooledBytes.addAndGet(bytes) > MAX_BYTES) {
+            if (poolable) {
+                pooledBytes.addAndGet(-bytes);
+            }
+            BufferUtils.destroyDirectBuffer(buffer);
+            return;
+        }
+        long key = 4L * buffer.capacity() + kind;
+        ArrayDeque<Buffer> shelf = shelves.computeIfAbsent(key, k -> new ArrayDeque<>());
+        synchronized (shelf) {
+            shelf.push(buffer.clear());
+        }
+    }
+
+    private Buffer take(long key, long bytes) {
+        ArrayDeque<Buffer> shelf = shelves.get(key);
+        if (shelf == null) {
+            return null;
+        }
+        Buffer buffer;
+        synchronized (shelf) {
+            buffer = shelf.poll();
+        }
+        if (buffer != null) {
+            pooledBytes.addAndGet(-bytes);
+            reused.incrementAndGet();
+        }
+        return buffer;
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MeshBufferPool(%d/%d MB, reused=%d, allocated=%d)", pooledBytes.get() >> 20,
+                             MAX_BYTES >> 20, reused.get(), allocated.get());
+    }
+}
@@ -0,0 +1,218 @@
+package jMonkeyEngine.Terrain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a terrain height function out of noise sources and operators. Every method adds a node
+ * and returns its id, which later nodes take as input, so nodes are always in evaluation order.
+ * Composite nodes (fbm, ridged) are expanded into primitive operations as they are added.
+ * {@link #compile(int)} turns the graph into a {@link NoisePlan} that evaluates whole rows.
+ */
+public class NoiseGraph {
+
+    static final int SIMPLEX = 0;
+    static final int WARPED_SIMPLEX = 1;
+    static final int CONSTANT = 2;
+    static final int ADD = 3;
+    static final int MUL = 4;
+    static final int MAD = 5;
+    static final int SCALE = 6;
+    static final int OFFSET = 7;
+    static final int DIVIDE = 8;
+    static final int POW = 9;
+    static final int RIDGE = 10;
+    static final int CURVE = 11;
+    static final int BLEND = 12;
+    static final int CLAMP = 13;
+
+    static class Op {
+        final int code;
+        final int[] inputs;
+        final float[] params;
+        final double frequency;
+        final long seedOffset;
+        final String label;
+
+        Op(int code, int[] inputs, float[] params, double frequency, long seedOffset, String label) {
+            this.code = code;
+            this.inputs = inputs;
+            this.params = params;
+            this.frequency = frequency;
+            this.seedOffset = seedOffset;
+            this.label = label;
+        }
+    }
+
+    private final List<Op> ops = new ArrayList<>();
+    // Label given to the primitive ops that a composite node expands into.
+    private String group;
+
+    /**
+     * The original terrain: four simplex octaves weighted 40/6/0.9/0.6, normalised to 0..1 and
+     * raised to the power 0.8. Produces exactly the same heights as the hand-written loop did.
+     */
+    public static NoiseGraph defaultTerrain() {
+        NoiseGraph graph = new NoiseGraph();
+        int e = graph.weightedSum(
+                new int[]{graph.simplex(0.05f), graph.simplex(0.25f), graph.simplex(0.5f),
+                          graph.simplex(0.75f)},
+                new float[]{40f, 6f, 0.9f, 0.6f});
+        e = graph.divide(e, 40f + 6f + 0.9f + 0.6f);
+        e = graph.offset(e, 1f);
+        e = graph.divide(e, 2f);
+        graph.pow(e, 0.8f);
+        return graph;
+    }
+
+    /**
+     * Simplex noise sampled at world coordinates times frequency.
+     */
+    public int simplex(double frequency) {
+        return simplex(frequency, 0);
+    }
+
+    public int simplex(double frequency, long seedOffset) {
+        return add(SIMPLEX, new int[0], new float[0], frequency, seedOffset,
+                   "simplex(" + (float) frequency + ")");
+    }
+
+    /**
+     * Simplex noise sampled at coordinates pushed around by two other nodes: (x + amplitude * wx,
+     * y + amplitude * wy), in world units.
+     */
+    public int warpedSimplex(double frequency, int warpX, int warpY, float amplitude) {
+        return add(WARPED_SIMPLEX, new int[]{warpX, warpY}, new float[]{amplitude}, frequency, 0,
+                   "warp(" + (float) frequency + ")");
+    }
+
+    public int constant(float value) {
+        return add(CONSTANT, new int[0], new float[]{value}, 0, 0, "constant");
+    }
+
+    public int add(int a, int b) {
+        return add(ADD, new int[]{a, b}, new float[0], 0, 0, "add");
+    }
+
+    public int mul(int a, int b) {
+        return add(MUL, new int[]{a, b}, new float[0], 0, 0, "mul");
+    }
+
+    /**
+     * inputs[0] * weights[0] + inputs[1] * weights[1] + ..., summed left to right.
+     */
+    public int weightedSum(int[] inputs, float[] weights) {
+        int sum = scale(inputs[0], weights[0]);
+        for (int i = 1; i < inputs.length; i++) {
+            sum = add(MAD, new int[]{sum, inputs[i]}, new float[]{weights[i]}, 0, 0, "sum");
+        }
+        return sum;
+    }
+
+    public int scale(int a, float factor) {
+        return add(SCALE, new int[]{a}, new float[]{factor}, 0, 0, "scale");
+    }
+
+    public int offset(int a, float amount) {
+        return add(OFFSET, new int[]{a}, new float[]{amount}, 0, 0, "offset");
+    }
+
+    public int divide(int a, float divisor) {
+        return add(DIVIDE, new int[]{a}, new float[]{divisor}, 0, 0, "divide");
+    }
+
+    public int pow(int a, float exponent) {
+        return add(POW, new int[]{a}, new float[]{exponent}, 0, 0, "pow");
+    }
+
+    public int clamp(int a, float min, float max) {
+        return add(CLAMP, new int[]{a}, new float[]{min, max}, 0, 0, "clamp");
+    }
+
+    /**
+     * (1 - |a|)^2: sharp crests where a crosses zero.
+     */
+    public int ridge(int a) {
+        return add(RIDGE, new int[]{a}, new float[0], 0, 0, "ridge");
+    }
+
+    /**
+     * Piecewise linear remap through the points (xs[i], ys[i]); xs must be ascending.
+     */
+    public int curve(int a, float[] xs, float[] ys) {
+        float[] params = new float[xs.length * 2];
+        for (int i = 0; i < xs.length; i++) {
+            params[2 * i] = xs[i];
+            params[2 * i + 1] = ys[i];
+        }
+        return add(CURVE, new int[]{a}, params, 0, 0, "curve");
+    }
+
+    /**
+     * Biome mask: a where mask <= low, b where mask >= high, smoothstepped in between.
+     */
+    public int blend(int a, int b, int mask, float low, float high) {
+        return add(BLEND, new int[]{a, b, mask}, new float[]{low, high}, 0, 0, "blend");
+    }
+
+    /**
+     * Fractal sum of simplex octaves, normalised back to -1..1.
+     */
+    public int fbm(double frequency, int octaves, double lacunarity, float gain) {
+        group = "fbm(" + (float) frequency + ")";
+        int[] inputs = new int[octaves];
+        float[] weights = new float[octaves];
+        float total = 0;
+        for (int i = 0; i < octaves; i++) {
+            inputs[i] = simplex(frequency * Math.pow(lacunarity, i), i);
+            weights[i] = (float) Math.pow(gain, i);
+            total += weights[i];
+        }
+        int result = divide(weightedSum(inputs, weights), total);
+        group = null;
+        return result;
+    }
+
+    /**
+     * Ridged multifractal: like fbm but every octave goes through {@link #ridge(int)}, giving
+     * 0..1 with sharp mountain crests.
+     */
+    public int ridged(double frequency, int octaves, double lacunarity, float gain) {
+        group = "ridged(" + (float) frequency + ")";
+        int[] inputs = new int[octaves];
+        float[] weights = new float[octaves];
+        float total = 0;
+        for (int i = 0; i < octaves; i++) {
+            inputs[i] = ridge(simplex(frequency * Math.pow(lacunarity, i), 100 + i));
+            weights[i] = (float) Math.pow(gain, i);
+            total += weights[i];
+        }
+        int result = divide(weightedSum(inputs, weights), total);
+        group = null;
+        return result;
+    }
+
+    private int add(int code, int[] inputs, float[] params, double frequency, long seedOffset,
+                    String label) {
+        for (int input : inputs) {
+            if (input < 0 || input >= ops.size()) {
+                throw new IllegalArgumentException("Unknown input node " + input);
+            }
+        }
+        ops.add(new Op(code, inputs, params, frequency, seedOffset,
+                       group == null ? label + "#" + ops.size() : group + "/" + label));
+        return ops.size() - 1;
+    }
+
+    /**
+     * Compiles the nodes the output depends on into a flat plan; the last node added is the
+     * output if none is given.
+     */
+    public NoisePlan compile() {
+        return compile(ops.size() - 1);
+    }
+
+    public NoisePlan compile(int output) {
+        return new NoisePlan(ops, output);
+    }
+}
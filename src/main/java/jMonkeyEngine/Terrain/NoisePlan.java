@@ -0,0 +1,255 @@
+package jMonkeyEngine.Terrain;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A compiled {@link NoiseGraph}: the nodes the output needs, in evaluation order, as flat arrays
+ * of op codes, register numbers and parameters. Evaluation works a row at a time, each op
+ * filling a scratch row (register) from its input rows in one tight loop, so the only dispatch
+ * is a switch per op per row and nothing is allocated while evaluating. Registers are reused
+ * once their value is no longer needed.
+ */
+public class NoisePlan {
+    private final int[] codes;
+    private final int[] targets;
+    private final int[] inputA;
+    private final int[] inputB;
+    private final int[] inputC;
+    private final float[][] params;
+    private final double[] frequencies;
+    private final long[] seedOffsets;
+    private final String[] labels;
+    private final int output;
+    private final int registerCount;
+
+    private final AtomicLongArray nanos;
+    private final AtomicLong rows = new AtomicLong();
+
+    NoisePlan(List<NoiseGraph.Op> ops, int outputNode) {
+        // Keep only what the output depends on.
+        boolean[] needed = new boolean[ops.size()];
+        needed[outputNode] = true;
+        for (int i = outputNode; i >= 0; i--) {
+            if (!needed[i]) continue;
+            for (int input : ops.get(i).inputs) {
+                needed[input] = true;
+            }
+        }
+
+        int count = 0;
+        int[] lastUse = new int[ops.size()];
+        int[] planIndex = new int[ops.size()];
+        for (int i = 0; i <= outputNode; i++) {
+            if (!needed[i]) continue;
+            planIndex[i] = count++;
+            lastUse[i] = i;
+            for (int input : ops.get(i).inputs) {
+                lastUse[input] = i;
+            }
+        }
+
+        codes = new int[count];
+        targets = new int[count];
+        inputA = new int[count];
+        inputB = new int[count];
+        inputC = new int[count];
+        params = new float[count][];
+        frequencies = new double[count];
+        seedOffsets = new long[count];
+        labels = new String[count];
+        nanos = new AtomicLongArray(count);
+
+        // Linear-scan register allocation: a node's register is freed after its last reader.
+        int[] registerOf = new int[ops.size()];
+        int[] free = new int[ops.size()];
+        int freeCount = 0;
+        int registers = 0;
+        for (int i = 0; i <= outputNode; i++) {
+            if (!needed[i]) continue;
+            NoiseGraph.Op op = ops.get(i);
+            int p = planIndex[i];
+            codes[p] = op.code;
+            params[p] = op.params;
+            frequencies[p] = op.frequency;
+            seedOffsets[p] = op.seedOffset;
+            labels[p] = op.label;
+            inputA[p] = op.inputs.length > 0 ? registerOf[op.inputs[0]] : -1;
+            inputB[p] = op.inputs.length > 1 ? registerOf[op.inputs[1]] : -1;
+            inputC[p] = op.inputs.length > 2 ? registerOf[op.inputs[2]] : -1;
+
+            // Inputs read for the last time here can hand their register straight to the output;
+            // every op reads element i before writing element i, so that is safe.
+            for (int input : op.inputs) {
+                if (lastUse[input] == i && !contains(free, freeCount, registerOf[input])) {
+                    free[freeCount++] = registerOf[input];
+                }
+            }
+            registerOf[i] = freeCount > 0 ? free[--freeCount] : registers++;
+            targets[p] = registerOf[i];
+        }
+        output = registerOf[outputNode];
+        registerCount = registers;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Scratch rows for one thread; pass the same array to every evaluateRow call on that thread.
+     */
+    public float[][] newRegisters(int width) {
+        return new float[registerCount][width];
+    }
+
+    /**
+     * Evaluates count samples at world coordinates (x0 + i * step, y) into out[offset + i].
+     */
+    public void evaluateRow(long seed, double x0, double step, double y, int count, float[] out,
+                            int offset, float[][] registers) {
+        evaluateRow(seed, x0, step, y, 0, 1, count, out, offset, registers);
+    }
+
+    /**
+     * Evaluates the samples first, first + stride, ... of the row starting at x0 into out[offset],
+     * out[offset + 1], ...; each is bit-identical to the same sample of a full row.
+     */
+    public void evaluateRow(long seed, double x0, double step, double y, int first, int stride,
+                            int count, float[] out, int offset, float[][] registers) {
+        for (int p = 0; p < codes.length; p++) {
+            long start = System.nanoTime();
+            float[] target = registers[targets[p]];
+            float[] a = inputA[p] >= 0 ? registers[inputA[p]] : null;
+            float[] b = inputB[p] >= 0 ? registers[inputB[p]] : null;
+            float[] param = params[p];
+
+            switch (codes[p]) {
+                case NoiseGraph.SIMPLEX: {
+                    double frequency = frequencies[p];
+                    OpenSimplex2.noise2Row(seed + seedOffsets[p], frequency * x0, frequency * step,
+                                           frequency * y, first, stride, count, target, 0);
+                    break;
+                }
+                case NoiseGraph.WARPED_SIMPLEX: {
+                    double frequency = frequencies[p];
+                    float amplitude = param[0];
+                    for (int i = 0; i < count; i++) {
+                        double x = x0 + (first + i * stride) * step + amplitude * a[i];
+                        double warpedY = y + amplitude * b[i];
+                        target[i] = OpenSimplex2.noise2(seed + seedOffsets[p], frequency * x,
+                                                        frequency * warpedY);
+                    }
+                    break;
+                }
+                case NoiseGraph.CONSTANT:
+                    for (int i = 0; i < count; i++) target[i] = param[0];
+                    break;
+                case NoiseGraph.ADD:
+                    for (int i = 0; i < count; i++) target[i] = a[i] + b[i];
+                    break;
+                case NoiseGraph.MUL:
+                    for (int i = 0; i < count; i++) target[i] = a[i] * b[i];
+                    break;
+                case NoiseGraph.MAD:
+                    for (int i = 0; i < count; i++) target[i] = a[i] + param[0] * b[i];
+                    break;
+                case NoiseGraph.SCALE:
+                    for (int i = 0; i < count; i++) target[i] = param[0] * a[i];
+                    break;
+                case NoiseGraph.OFFSET:
+                    for (int i = 0; i < count; i++) target[i] = a[i] + param[0];
+                    break;
+                case NoiseGraph.DIVIDE:
+                    for (int i = 0; i < count; i++) target[i] = a[i] / param[0];
+                    break;
+                case NoiseGraph.POW:
+                    for (int i = 0; i < count; i++) target[i] = (float) Math.pow(a[i], param[0]);
+                    break;
+                case NoiseGraph.CLAMP:
+                    for (int i = 0; i < count; i++) target[i] = Math.max(param[0], Math.min(param[1], a[i]));
+                    break;
+                case NoiseGraph.RIDGE:
+                    for (int i = 0; i < count; i++) {
+                        float r = 1 - Math.abs(a[i]);
+                        target[i] = r * r;
+                    }
+                    break;
+                case NoiseGraph.CURVE:
+                    for (int i = 0; i < count; i++) target[i] = curve(param, a[i]);
+                    break;
+                case NoiseGraph.BLEND: {
+                    float[] mask = registers[inputC[p]];
+                    float low = param[0];
+                    float range = param[1] - param[0];
+                    for (int i = 0; i < count; i++) {
+                        float t = Math.max(0, Math.min(1, (mask[i] - low) / range));
+                        t = t * t * (3 - 2 * t);
+                        target[i] = a[i] + (b[i] - a[i]) * t;
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown noise op " + codes[p]);
+            }
+            nanos.addAndGet(p, System.nanoTime() - start);
+        }
+
+        System.arraycopy(registers[output], 0, out, offset, count);
+        rows.incrementAndGet();
+    }
+
+    private static float curve(float[] points, float x) {
+        if (x <= points[0]) return points[1];
+        for (int i = 2; i < points.length; i += 2) {
+            if (x <= points[i]) {
+                float t = (x - points[i - 2]) / (points[i] - points[i - 2]);
+                return points[i - 1] + (points[i + 1] - points[i - 1]) * t;
+            }
+        }
+        return points[points.length - 1];
+    }
+
+    public int getOpCount() {
+        return codes.length;
+    }
+
+    public int getRegisterCount() {
+        return registerCount;
+    }
+
+    public void resetTimings() {
+        for (int p = 0; p < codes.length; p++) {
+            nanos.set(p, 0);
+        }
+        rows.set(0);
+    }
+
+    /**
+     * Time spent in each node since the last reset, slowest first.
+     */
+    public String getTimings() {
+        long total = 0;
+        for (int p = 0; p < codes.length; p++) {
+            total += nanos.get(p);
+        }
+        Integer[] order = new Integer[codes.length];
+        for (int p = 0; p < order.length; p++) {
+            order[p] = p;
+        }
+        Arrays.sort(order, (x, y) -> Long.compare(nanos.get(y), nanos.get(x)));
+
+        StringBuilder sb = new StringBuilder(String.format("NoisePlan: %d ops, %d registers, %d rows, %.1f ms%n",
+                                                           codes.length, registerCount, rows.get(), total / 1e6));
+        for (int p : order) {
+            sb.append(String.format("  %-28s %8.2f ms %5.1f%%%n", labels[p], nanos.get(p) / 1e6,
+                                    total == 0 ? 0 : 100.0 * nanos.get(p) / total));
+        }
+        return sb.toString();
+    }
+}
@@ -58,6 +58,37 @@ public class OpenSimplex2 {
         return noise2_UnskewedBase(seed, xs, ys);
     }
 
+    /**
+     * 2D Simplex noise, standard lattice orientation, for count points along a row:
+     * out[offset + i] = noise2(seed, x0 + i * dx, y), up to the last bit of rounding.
+     * The skew is worked out once per row and stepped along it instead of per point.
+     */
+    public static void noise2Row(long seed, double x0, double dx, double y, int count,
+                                 float[] out, int offset) {
+        noise2Row(seed, x0, dx, y, 0, 1, count, out, offset);
+    }
+
+    /**
+     * Like {@link #noise2Row(long, double, double, double, int, float[], int)} but only for the
+     * points first, first + stride, ... of the row. Every point is bit-identical to the same
+     * point of a full row starting at x0.
+     */
+    public static void noise2Row(long seed, double x0, double dx, double y, int first, int stride,
+                                 int count, float[] out, int offset) {
+
+        // xs = x + SKEW_2D * (x + y) and ys = y + SKEW_2D * (x + y) are both linear in x.
+        double skewY = SKEW_2D * y;
+        double xs0 = x0 * (1 + SKEW_2D) + skewY;
+        double ys0 = y + skewY + x0 * SKEW_2D;
+        double dxs = dx * (1 + SKEW_2D);
+        double dys = dx * SKEW_2D;
+
+        for (int i = 0; i < count; i++) {
+            int k = first + i * stride;
+            out[offset + i] = noise2_UnskewedBase(seed, xs0 + k * dxs, ys0 + k * dys);
+        }
+    }
+
     /**
      * 2D Simplex noise, with Y pointing down the main diagonal.
      * Might be better for a 2D sandbox style game, where Y is vertical.
@@ -0,0 +1,120 @@
+package jMonkeyEngine.Terrain;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A parent heightmap that starts out coarse: noise is only evaluated on a lattice of every
+ * coarseStep-th row and column of each tile and along tile borders, and everything in between is
+ * interpolated. Meshes that only read lattice samples are exact straight away; tiles are refined
+ * to exact samples one at a time when a finer mesh needs them (see
+ * {@link HeightMapGenerator#refineTile}).
+ * <p>
+ * Tiles are the children: tileSize samples starting at apron + i * (tileSize - 1) along each
+ * axis, so neighbouring tiles share their border samples.
+ */
+public class RefinableHeightfield extends Heightfield {
+    private final int parentX;
+    private final int parentZ;
+    private final int tileSize;
+    private final int apron;
+    private final int coarseStep;
+    private final int tilesX;
+    private final int tilesZ;
+    private final boolean[] refined;
+    private final Object[] tileLocks;
+    private final AtomicInteger refinedCount = new AtomicInteger();
+
+    public RefinableHeightfield(int width, int depth, int parentX, int parentZ, int tileSize,
+                                int apron, int coarseStep) {
+        super(width, depth);
+        this.parentX = parentX;
+        this.parentZ = parentZ;
+        this.tileSize = tileSize;
+        this.apron = apron;
+        this.coarseStep = coarseStep;
+        this.tilesX = (width - 2 * apron - 1) / (tileSize - 1);
+        this.tilesZ = (depth - 2 * apron - 1) / (tileSize - 1);
+        int tiles = tilesX * tilesZ;
+        this.refined = new boolean[tiles];
+        this.tileLocks = new Object[tiles];
+        for (int i = 0; i < tiles; i++) {
+            tileLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * The tile holding sample (x, z); a shared border sample counts as the later tile's.
+     */
+    public int tileAt(int x, int z) {
+        int tx = Math.max(0, Math.min(tilesX - 1, Math.floorDiv(x - apron, tileSize - 1)));
+        int tz = Math.max(0, Math.min(tilesZ - 1, Math.floorDiv(z - apron, tileSize - 1)));
+        return tile(tx, tz);
+    }
+
+    public int tile(int tx, int tz) {
+        return tz * tilesX + tx;
+    }
+
+    /**
+     * Local sample where the tile's first column lies.
+     */
+    public int getTileX(int tile) {
+        return apron + (tile % tilesX) * (tileSize - 1);
+    }
+
+    public int getTileZ(int tile) {
+        return apron + (tile / tilesX) * (tileSize - 1);
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesZ() {
+        return tilesZ;
+    }
+
+    /**
+     * Lock to hold while checking or refining a tile; isRefined and markRefined assume it is held.
+     */
+    Object tileLock(int tile) {
+        return tileLocks[tile];
+    }
+
+    boolean isRefined(int tile) {
+        return refined[tile];
+    }
+
+    void markRefined(int tile) {
+        refined[tile] = true;
+        refinedCount.incrementAndGet();
+    }
+
+    public int getTileCount() {
+        return refined.length;
+    }
+
+    public int getRefinedCount() {
+        return refinedCount.get();
+    }
+
+    public int getParentX() {
+        return parentX;
+    }
+
+    public int getParentZ() {
+        return parentZ;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getApron() {
+        return apron;
+    }
+
+    public int getCoarseStep() {
+        return coarseStep;
+    }
+}
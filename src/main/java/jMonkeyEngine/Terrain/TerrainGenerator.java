@@ -2,22 +2,33 @@ package jMonkeyEngine.Terrain;
 
 import com.jme3.app.SimpleApplication;
 import com.jme3.asset.AssetManager;
+import com.jme3.bounding.BoundingBox;
 import com.jme3.bullet.BulletAppState;
 import com.jme3.bullet.collision.shapes.MeshCollisionShape;
 import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.material.MatParamOverride;
 import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
-import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
+import com.jme3.math.Vector4f;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.VertexBuffer;
+import com.jme3.shader.VarType;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.image.ColorSpace;
 import com.jme3.util.BufferUtils;
 import jMonkeyEngine.Chunks.ChunkCoord;
+import jMonkeyEngine.Chunks.ChunkLayout;
 import jMonkeyEngine.Chunks.ChunkManager;
 import jMonkeyEngine.Road.RoadGenerator;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -40,6 +51,44 @@ public class TerrainGenerator{
     private final float SCALE;
     private final Long SEED;
     private final int MAX_HEIGHT;
+    private final ChunkLayout layout;
+    // Samples each level of detail keeps, for every level whose step fits in a chunk.
+    private final int[][] LOD_SAMPLES;
+    // The grid's triangles and texture coordinates depend only on the level of detail, so every
+    // chunk of a level shares one index and one texcoord buffer, uploaded to the GPU once.
+    private final VertexBuffer[] LOD_INDICES;
+    private final VertexBuffer[] LOD_UVS;
+    // Displacement mode: every chunk of a level draws the same flat grid, moved into place by the
+    // terrain shader from a small height texture of the chunk's own; see buildChunk.
+    private boolean displacement;
+    private VertexBuffer[] flatPositions;
+    private VertexBuffer[] flatSurface;
+
+    // Direct memory kept for meshes that haven't been built yet: a whole parent's worth of
+    // full-detail children (about 1.3 MB each).
+    private static final long MESH_POOL_BYTES = 32L << 20;
+    private final MeshBufferPool bufferPool = new MeshBufferPool(MESH_POOL_BYTES);
+
+    // Terrain colours, applied by the terrain shader: a point below BAND_LIMITS[i] (and not below
+    // the one before) gets BAND_COLORS[i]; the last colour is for everything higher.
+    private static final float[] BAND_LIMITS = {0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f, 0.9f};
+    private static final float[][] BAND_COLORS = {
+            {0f, 0f, 1f, 1f}, // Blue (water)
+            {211f / 255f, 169f / 255f, 108f / 255f, 1f}, // Beach (sand yellow)
+            {34f / 255f, 175f / 255f, 34f / 255f, 1f}, // Light grass
+            {34f / 255f, 125f / 255f, 34f / 255f, 1f}, // Mid grass
+            {34f / 255f, 100f / 255f, 25f / 255f, 1f}, // Darker grass
+            {75f / 255f, 80f / 255f, 30f / 255f, 1f}, // Desaturated grass
+            {90f / 255f, 75f / 255f, 20f / 255f, 1f}, // Grass-dirt blend
+            {110f / 255f, 70f / 255f, 20f / 255f, 1f}, // Dirtier terrain
+            {139f / 255f, 69f / 255f, 19f / 255f, 1f}, // Mountain (brown)
+            {1f, 1f, 1f, 1f}, // Snow (white)
+    };
+    private static final float[] ROAD_COLOR = {120f / 255f, 120f / 255f, 120f / 255f, 1f};
+    // Snow only settles where the normal is at least this close to straight up.
+    private static final float SNOW_SLOPE = 0.8f;
+    // Every chunk draws with this one material, so the renderer binds it once for all of them.
+    private final Material terrainMaterial;
 
     private List<Future<?>> chunkTasks;
 
@@ -58,165 +107,587 @@ public class TerrainGenerator{
         this.SCALE = SCALE;
         this.SEED = seed;
         MAX_HEIGHT = maxHeight;
-        this.heightMap = new HeightMapGenerator(SEED, PARENT_SIZE, SCALE);
+        this.layout = new ChunkLayout(chunkSize, parentSize, SCALE);
+        int levels = 0;
+        while ((1 << levels) < chunkSize - 1) {
+            levels++;
+        }
+        this.LOD_SAMPLES = new int[levels][];
+        this.LOD_INDICES = new VertexBuffer[levels];
+        this.LOD_UVS = new VertexBuffer[levels];
+        for (int lod = 0; lod < levels; lod++) {
+            LOD_SAMPLES[lod] = lodSamples(chunkSize, lod);
+            LOD_INDICES[lod] = indexBuffer(LOD_SAMPLES[lod].length);
+            LOD_UVS[lod] = uvBuffer(LOD_SAMPLES[lod], chunkSize);
+        }
+        this.heightMap = new HeightMapGenerator(SEED, PARENT_SIZE, layout.getParentSpan(),
+                                                layout.getApron(), SCALE,
+                                                NoiseGraph.defaultTerrain().compile());
+        this.terrainMaterial = assetManager == null ? null : createTerrainMaterial(assetManager);
+    }
+
+    private Material createTerrainMaterial(AssetManager assetManager) {
+        Material mat = new Material(assetManager, "MatDefs/Terrain/Terrain.j3md");
+        Vector4f[] bandColors = new Vector4f[BAND_COLORS.length];
+        for (int i = 0; i < bandColors.length; i++) {
+            float[] c = BAND_COLORS[i];
+            bandColors[i] = new Vector4f(c[0], c[1], c[2], c[3]);
+        }
+        mat.setFloat("MaxHeight", MAX_HEIGHT);
+        mat.setInt("BandCount", BAND_COLORS.length);
+        mat.setParam("BandLimits", VarType.FloatArray, BAND_LIMITS);
+        mat.setParam("BandColors", VarType.Vector4Array, bandColors);
+        mat.setFloat("SnowSlope", SNOW_SLOPE);
+        mat.setColor("RoadColor", new ColorRGBA(ROAD_COLOR[0], ROAD_COLOR[1], ROAD_COLOR[2], ROAD_COLOR[3]));
+        mat.setFloat("HeightMapSize", CHUNK_SIZE + 2);
+        mat.setFloat("SampleSpacing", SCALE / 16);
+        return mat;
+    }
+
+    /**
+     * Switches chunks to displacement rendering; see buildChunk. Call before any chunk is built.
+     */
+    public void setDisplacement(boolean displacement) {
+        this.displacement = displacement;
+        if (displacement && flatPositions == null) {
+            flatPositions = new VertexBuffer[LOD_SAMPLES.length];
+            flatSurface = new VertexBuffer[LOD_SAMPLES.length];
+            for (int lod = 0; lod < LOD_SAMPLES.length; lod++) {
+                flatPositions[lod] = flatGridPositions(LOD_SAMPLES[lod]);
+                flatSurface[lod] = flatGridSurface(LOD_SAMPLES[lod]);
+            }
+        }
+    }
+
+    public boolean isDisplacement() {
+        return displacement;
     }
 
     public void setChunkManager(ChunkManager manager) {
         this.manager = manager;
     }
 
-    public float[][] generateHeightMap(ChunkCoord chunk) throws IOException {
+    public ChunkLayout getLayout() {
+        return layout;
+    }
+
+    public int getMaxHeight() {
+        return MAX_HEIGHT;
+    }
+
+    public Heightfield generateHeightMap(ChunkCoord chunk) throws IOException {
         return heightMap.generateHeightmap(chunk.x, chunk.z);
     }
 
-    public void updateHeightMap(float[][] terrain, List<jMonkeyEngine.Road.Node> pathPoints) {
-        heightMap.applyRoadFlattening(terrain, pathPoints);
+    /**
+     * Coarse first pass of a parent, exact for meshes of level of detail coarseLod and up; see
+     * {@link HeightMapGenerator#generateCoarseHeightmap}.
+     */
+    public RefinableHeightfield generateCoarseHeightMap(ChunkCoord chunk, int coarseLod) {
+        return heightMap.generateCoarseHeightmap(chunk.x, chunk.z, CHUNK_SIZE, 1 << coarseLod);
+    }
+
+    /**
+     * Makes the samples of the child at (cx, cz) exact if its parent was generated coarse.
+     */
+    public void refineChunk(Heightfield terrain, int cx, int cz) {
+        if (terrain instanceof RefinableHeightfield) {
+            heightMap.refineTile((RefinableHeightfield) terrain, cx, cz);
+        }
+    }
+
+    public void refineAlong(RefinableHeightfield terrain, List<jMonkeyEngine.Road.Node> pathPoints) {
+        heightMap.refineAlong(terrain, pathPoints);
+    }
+
+    /**
+     * Flattens the road into the terrain; see {@link HeightMapGenerator#applyRoadFlattening}.
+     *
+     * @return the entry height for the next parent's stretch of road
+     */
+    public float updateHeightMap(Heightfield terrain, List<jMonkeyEngine.Road.Node> pathPoints,
+                                 float entryHeight) {
+        return heightMap.applyRoadFlattening(terrain, pathPoints, entryHeight);
     }
 
-    public Mesh generateChunkMesh(float[][] terrain, int cx, int cz){
+    /**
+     * Builds the geometry of the child whose samples start at (cx, cz) in its parent's heightmap.
+     * Normally that is a mesh of its own from generateChunkMesh. In displacement mode it is the
+     * level's shared flat grid, displaced by the terrain shader from a height texture of the
+     * child's samples, so the only per-chunk work is filling that texture; full-detail chunks
+     * also get a collision shape, from a positions-only mesh that goes back to the pool as soon as
+     * Bullet has copied it.
+     */
+    public Geometry buildChunk(Heightfield terrain, ChunkCoord chunk, int cx, int cz, int lod) {
+        if (!displacement) {
+            return createGeometry(chunk, generateChunkMesh(terrain, cx, cz, lod), lod);
+        }
+        int[] samples = samplesFor(lod);
+        float skirtDepth = skirtDepth(terrain, cx, cz, samples);
+        float[] range = new float[2];
+        Texture2D heightTexture = generateHeightTexture(terrain, cx, cz, range);
+
+        // A mesh of its own for its own bounds, but every buffer in it is the level's.
         Mesh mesh = new Mesh();
+        boolean shared = lod < LOD_SAMPLES.length;
+        mesh.setBuffer(shared ? flatPositions[lod] : flatGridPositions(samples));
+        mesh.setBuffer(shared ? flatSurface[lod] : flatGridSurface(samples));
+        mesh.setBuffer(shared ? LOD_INDICES[lod] : indexBuffer(samples.length));
+        float extent = (CHUNK_SIZE - 1) * (SCALE / 16);
+        mesh.setBound(new BoundingBox(new Vector3f(0, range[0] * MAX_HEIGHT - skirtDepth, 0),
+                                      new Vector3f(extent, range[1] * MAX_HEIGHT, extent)));
+        mesh.updateCounts();
 
-        Vector3f[] vertices = new Vector3f[CHUNK_SIZE * CHUNK_SIZE];
-        ColorRGBA[] colors = new ColorRGBA[vertices.length];
-        int vertexIndex = 0;
-        for (int z = 0; z < CHUNK_SIZE; z++) {
-            for (int x = 0; x < CHUNK_SIZE; x++) {
-                float height = terrain[cx + x][cz + z];
-
-                ColorRGBA color;
-                if (height < 0.1f) {
-                    color = new ColorRGBA(0f, 0f, 1f, 1f); // Blue (water)
-                } else if (height < 0.2f) {
-                    color = new ColorRGBA(211f / 255f, 169f / 255f, 108f / 255f, 1f); // Beach (sand yellow)
-                } else if (height < 0.3f) {
-                    color = new ColorRGBA(34f / 255f, 175f / 255f, 34f / 255f, 1f); // Light grass
-                } else if (height < 0.4f) {
-                    color = new ColorRGBA(34f / 255f, 125f / 255f, 34f / 255f, 1f); // Mid grass
-                } else if (height < 0.5f) {
-                    color = new ColorRGBA(34f / 255f, 100f / 255f, 25f / 255f, 1f); // Darker grass
-                } else if (height < 0.6f) {
-                    color = new ColorRGBA(75f / 255f, 80f / 255f, 30f / 255f, 1f); // Desaturated grass
-                } else if (height < 0.7f) {
-                    color = new ColorRGBA(90f / 255f, 75f / 255f, 20f / 255f, 1f); // Grass-dirt blend
-                } else if (height < 0.8f) {
-                    color = new ColorRGBA(110f / 255f, 70f / 255f, 20f / 255f, 1f); // Dirtier terrain
-                } else if (height < 0.9f) {
-                    color = new ColorRGBA(139f / 255f, 69f / 255f, 19f / 255f, 1f); // Mountain (brown)
-                } else {
-                    color = new ColorRGBA(1f, 1f, 1f, 1f); // Snow (white)
-                }
+        Geometry chunkGeom = new Geometry("Chunk_" + chunk.x + "_" + chunk.z, mesh);
+        chunkGeom.setMaterial(terrainMaterial);
+        chunkGeom.addMatParamOverride(new MatParamOverride(VarType.Texture2D, "HeightMap", heightTexture));
+        chunkGeom.addMatParamOverride(new MatParamOverride(VarType.Float, "SkirtDepth", skirtDepth));
+        chunkGeom.addMatParamOverride(new MatParamOverride(VarType.Float, "SampleStride",
+                                                           (float) (1 << lod)));
+        placeChunk(chunkGeom, chunk, lod);
+        if (lod == 0) {
+            Mesh collision = generateCollisionMesh(terrain, cx, cz, skirtDepth);
+            chunkGeom.addControl(new RigidBodyControl(new MeshCollisionShape(collision), 0));
+            releaseMesh(collision);
+        }
+        return chunkGeom;
+    }
 
-                if (height > 1) {
-                    height = height - (float)Math.floor(height);
-                    color = new ColorRGBA(120f / 255f, 120f / 255f, 120f / 255f, 1f);
-                }
+    /**
+     * The child's samples, and one more all round for the normals at its edges, as an R32F
+     * texture in the Heightfield.get convention: height + 2 on road. range gets the lowest and
+     * highest height in it.
+     */
+    Texture2D generateHeightTexture(Heightfield terrain, int cx, int cz, float[] range) {
+        int size = CHUNK_SIZE + 2;
+        ByteBuffer data = bufferPool.bytes(4 * size * size);
+        short[] heights = terrain.getHeights();
+        long[] roadMask = terrain.getRoadMask();
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int z = 0; z < size; z++) {
+            int row = terrain.index(cx - 1, cz - 1 + z);
+            for (int x = 0; x < size; x++) {
+                int sample = row + x;
+                float height = (heights[sample] & 0xFFFF) * Heightfield.HEIGHT_STEP;
+                boolean isRoad = (roadMask[sample >>> 6] & (1L << sample)) != 0;
+                min = Math.min(min, height);
+                max = Math.max(max, height);
+                data.putFloat(4 * (z * size + x), isRoad ? height + 2 : height);
+            }
+        }
+        range[0] = min;
+        range[1] = max;
+
+        Texture2D texture = new Texture2D(new Image(Image.Format.R32F, size, size, data, ColorSpace.Linear));
+        texture.setMagFilter(Texture.MagFilter.Nearest);
+        texture.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+        texture.setWrap(Texture.WrapMode.EdgeClamp);
+        return texture;
+    }
 
-                colors[vertexIndex] = color;
+    /**
+     * Full-detail positions and the level's triangles, nothing else: enough for a collision
+     * shape. Release it once the shape is built.
+     */
+    private Mesh generateCollisionMesh(Heightfield terrain, int cx, int cz, float skirtDepth) {
+        int[] samples = LOD_SAMPLES[0];
+        int size = samples.length;
+        FloatBuffer positions = bufferPool.floats(3 * (size * size + 4 * size));
+        writeGrid(terrain, cx, cz, samples, positions, null);
+        writeSkirts(skirtDepth, size, positions, null, null);
 
-                vertices[vertexIndex++] = new Vector3f(
-                        (x * (SCALE / 16)),
-                        height * MAX_HEIGHT,
-                        (z * (SCALE / 16))
-                );
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+        mesh.setBuffer(LOD_INDICES[0]);
+        mesh.updateCounts();
+        return mesh;
+    }
 
+    /**
+     * A flat grid (y = 0) over the level's samples, with its skirts, for displacement.
+     */
+    private VertexBuffer flatGridPositions(int[] samples) {
+        int size = samples.length;
+        float spacing = SCALE / 16;
+        FloatBuffer positions = BufferUtils.createFloatBuffer(3 * (size * size + 4 * size));
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                int v = z * size + x;
+                positions.put(3 * v, samples[x] * spacing).put(3 * v + 1, 0f)
+                         .put(3 * v + 2, samples[z] * spacing);
             }
         }
+        writeSkirts(0, size, positions, null, null);
+        VertexBuffer buffer = new VertexBuffer(VertexBuffer.Type.Position);
+        buffer.setupData(VertexBuffer.Usage.Static, 3, VertexBuffer.Format.Float, positions);
+        return buffer;
+    }
+
+    // TexCoord2 of the flat grid: y is 1 on skirt vertices, which hang SkirtDepth down.
+    private static VertexBuffer flatGridSurface(int[] samples) {
+        int size = samples.length;
+        FloatBuffer surface = BufferUtils.createFloatBuffer(2 * (size * size + 4 * size));
+        for (int v = size * size; v < size * size + 4 * size; v++) {
+            surface.put(2 * v + 1, 1f);
+        }
+        VertexBuffer buffer = new VertexBuffer(VertexBuffer.Type.TexCoord2);
+        buffer.setupData(VertexBuffer.Usage.Static, 2, VertexBuffer.Format.Float, surface);
+        return buffer;
+    }
 
-        int[] indices = new int[(CHUNK_SIZE - 1) * (CHUNK_SIZE - 1) * 6];
+    /**
+     * Builds one child chunk from its parent's heightmap. Level of detail l keeps every 2^l-th
+     * sample (always including the last one, so neighbours share edge positions) and hangs a skirt
+     * below every edge, deep enough to hide the gap to a finer neighbour.
+     * <p>
+     * There are no vertex colours: the terrain shader colours by height and slope, and only needs
+     * to know which vertices are road (and how far a skirt hangs below its edge), in TexCoord2.
+     * Positions, normals and those are written straight into direct buffers from the pool, so
+     * building a chunk leaves next to nothing for the garbage collector. Indices and texture
+     * coordinates are the level's shared buffers. Release the mesh with releaseGeometry to hand
+     * its own buffers back.
+     */
+    public Mesh generateChunkMesh(Heightfield terrain, int cx, int cz, int lod){
+        int[] samples = samplesFor(lod);
+        int size = samples.length;
+        int gridVertices = size * size;
+        int vertexCount = gridVertices + 4 * size;
+
+        FloatBuffer positions = bufferPool.floats(3 * vertexCount);
+        FloatBuffer normals = bufferPool.floats(3 * vertexCount);
+        FloatBuffer surface = bufferPool.floats(2 * vertexCount);
+
+        // Separate stages rather than one long loop nest, so each gets compiled on its own early on.
+        writeGrid(terrain, cx, cz, samples, positions, surface);
+        computeNormals(terrain, cx, cz, samples, normals);
+        writeSkirts(skirtDepth(terrain, cx, cz, samples), size, positions, normals, surface);
+
+        Mesh mesh = new Mesh();
+        boolean shared = lod < LOD_SAMPLES.length;
+        mesh.setBuffer(shared ? LOD_UVS[lod] : uvBuffer(samples, CHUNK_SIZE));
+        mesh.setBuffer(VertexBuffer.Type.Normal, 3, normals);
+        mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+        mesh.setBuffer(shared ? LOD_INDICES[lod] : indexBuffer(size));
+        mesh.setBuffer(VertexBuffer.Type.TexCoord2, 2, surface);
+        mesh.updateBound();
+
+        return mesh;
+    }
+
+    private void writeGrid(Heightfield terrain, int cx, int cz, int[] samples, FloatBuffer positions,
+                           FloatBuffer surface) {
+        int size = samples.length;
+        float spacing = SCALE / 16;
+        short[] heights = terrain.getHeights();
+        long[] roadMask = terrain.getRoadMask();
+        for (int z = 0; z < size; z++) {
+            int row = terrain.index(cx, cz + samples[z]);
+            for (int x = 0; x < size; x++) {
+                int sample = row + samples[x];
+                int v = z * size + x;
+                float height = (heights[sample] & 0xFFFF) * Heightfield.HEIGHT_STEP;
+                boolean isRoad = (roadMask[sample >>> 6] & (1L << sample)) != 0;
+
+                positions.put(3 * v, samples[x] * spacing).put(3 * v + 1, height * MAX_HEIGHT)
+                         .put(3 * v + 2, samples[z] * spacing);
+                if (surface != null) {
+                    surface.put(2 * v, isRoad ? 1f : 0f).put(2 * v + 1, 0f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Triangles of a grid size samples across and of its four skirts; see writeSkirts for the
+     * vertex order.
+     */
+    private static VertexBuffer indexBuffer(int size) {
+        int gridVertices = size * size;
+        IntBuffer indices = BufferUtils.createIntBuffer((size - 1) * (size - 1) * 6 + 4 * (size - 1) * 6);
         int indexCount = 0;
-        for (int z = 0; z < CHUNK_SIZE - 1; z++) {
-            for (int x = 0; x < CHUNK_SIZE - 1; x++) {
-                int topLeft = z * CHUNK_SIZE + x;
+        for (int z = 0; z < size - 1; z++) {
+            for (int x = 0; x < size - 1; x++) {
+                int topLeft = z * size + x;
                 int topRight = topLeft + 1;
-                int bottomLeft = topLeft + CHUNK_SIZE;
+                int bottomLeft = topLeft + size;
                 int bottomRight = bottomLeft + 1;
 
                 // First triangle
-                indices[indexCount++] = topLeft;
-                indices[indexCount++] = bottomLeft;
-                indices[indexCount++] = topRight;
+                indices.put(indexCount++, topLeft);
+                indices.put(indexCount++, bottomLeft);
+                indices.put(indexCount++, topRight);
 
                 // Second triangle
-                indices[indexCount++] = topRight;
-                indices[indexCount++] = bottomLeft;
-                indices[indexCount++] = bottomRight;
+                indices.put(indexCount++, topRight);
+                indices.put(indexCount++, bottomLeft);
+                indices.put(indexCount++, bottomRight);
             }
         }
-
-        Vector2f[] uvs = new Vector2f[CHUNK_SIZE * CHUNK_SIZE];
-        int index = 0;
-        for (int z = 0; z < CHUNK_SIZE; z++) {
-            for (int x = 0; x < CHUNK_SIZE; x++) {
-                uvs[index++] = new Vector2f((float)x / (CHUNK_SIZE - 1), (float)z / (CHUNK_SIZE - 1));
+        for (int side = 0; side < 4; side++) {
+            int base = gridVertices + side * size;
+            for (int i = 0; i < size - 1; i++) {
+                int top = edgeVertex(side, i, size);
+                int nextTop = edgeVertex(side, i + 1, size);
+                indices.put(indexCount++, top);
+                indices.put(indexCount++, nextTop);
+                indices.put(indexCount++, base + i);
+
+                indices.put(indexCount++, nextTop);
+                indices.put(indexCount++, base + i + 1);
+                indices.put(indexCount++, base + i);
             }
         }
+        VertexBuffer buffer = new VertexBuffer(VertexBuffer.Type.Index);
+        buffer.setupData(VertexBuffer.Usage.Static, 3, VertexBuffer.Format.UnsignedInt, indices);
+        return buffer;
+    }
 
-        mesh.setBuffer(VertexBuffer.Type.TexCoord, 2, BufferUtils.createFloatBuffer(uvs));
-
-        Vector3f[] normals = computeNormals(vertices, indices);
-        mesh.setBuffer(VertexBuffer.Type.Normal, 3, BufferUtils.createFloatBuffer(normals));
-
-        mesh.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
-        mesh.setBuffer(VertexBuffer.Type.Index, 3, BufferUtils.createIntBuffer(indices));
-        mesh.setBuffer(VertexBuffer.Type.Color, 4, BufferUtils.createFloatBuffer(colors));
-        mesh.updateBound();
-
-        return mesh;
+    /**
+     * Texture coordinates of the grid, 0..1 across the chunk, and of the skirts below its edges.
+     */
+    private static VertexBuffer uvBuffer(int[] samples, int chunkSize) {
+        int size = samples.length;
+        int gridVertices = size * size;
+        FloatBuffer uvs = BufferUtils.createFloatBuffer(2 * (gridVertices + 4 * size));
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                int v = z * size + x;
+                uvs.put(2 * v, (float)samples[x] / (chunkSize - 1))
+                   .put(2 * v + 1, (float)samples[z] / (chunkSize - 1));
+            }
+        }
+        for (int side = 0; side < 4; side++) {
+            for (int i = 0; i < size; i++) {
+                int top = edgeVertex(side, i, size);
+                int skirt = gridVertices + side * size + i;
+                uvs.put(2 * skirt, uvs.get(2 * top)).put(2 * skirt + 1, uvs.get(2 * top + 1));
+            }
+        }
+        VertexBuffer buffer = new VertexBuffer(VertexBuffer.Type.TexCoord);
+        buffer.setupData(VertexBuffer.Usage.Static, 2, VertexBuffer.Format.Float, uvs);
+        return buffer;
     }
 
-    private Vector3f[] computeNormals(Vector3f[] vertices, int[] indices) {
-        Vector3f[] normals = new Vector3f[vertices.length];
-        for (int i = 0; i < normals.length; i++) {
-            normals[i] = new Vector3f(0, 0, 0);
+    /**
+     * Grid vertex normals from central differences of the heightfield. Inside the chunk the
+     * differences are taken between the vertex's neighbours in the level's own grid, so a coarse
+     * level only reads samples it also has as vertices: exact ones even on a parent that has only
+     * had its coarse pass. Edge vertices take them between the samples right next to them, which
+     * every level and the neighbouring child (or parent, through the apron) read the same, so a
+     * shared edge vertex gets the same normal from all of them. Skirts copy the normal of the edge
+     * above them.
+     */
+    void computeNormals(Heightfield terrain, int cx, int cz, int[] samples, FloatBuffer normals) {
+        int size = samples.length;
+        int width = terrain.getWidth();
+        short[] heights = terrain.getHeights();
+        // Difference the 16-bit steps and scale once.
+        float rise = Heightfield.HEIGHT_STEP * MAX_HEIGHT;
+        float spacing = SCALE / 16;
+        for (int z = 0; z < size; z++) {
+            int row = terrain.index(cx, cz + samples[z]);
+            boolean edgeRow = z == 0 || z == size - 1;
+            for (int x = 0; x < size; x++) {
+                boolean edge = edgeRow || x == 0 || x == size - 1;
+                int left = edge ? samples[x] - 1 : samples[x - 1];
+                int right = edge ? samples[x] + 1 : samples[x + 1];
+                int back = edge ? samples[z] - 1 : samples[z - 1];
+                int front = edge ? samples[z] + 1 : samples[z + 1];
+                int i = row + samples[x];
+                float dx = ((heights[row + right] & 0xFFFF) - (heights[row + left] & 0xFFFF)) * rise;
+                float dz = ((heights[i + (front - samples[z]) * width] & 0xFFFF)
+                        - (heights[i + (back - samples[z]) * width] & 0xFFFF)) * rise;
+                float runX = (right - left) * spacing;
+                float runZ = (front - back) * spacing;
+                // (-dx / runX, 1, -dz / runZ), scaled by runX * runZ.
+                float nx = -dx * runZ;
+                float ny = runX * runZ;
+                float nz = -dz * runX;
+                float length = 1f / (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                int v = 3 * (z * size + x);
+                normals.put(v, nx * length).put(v + 1, ny * length).put(v + 2, nz * length);
+            }
         }
+    }
 
-        for (int i = 0; i < indices.length; i += 3) {
-            int i0 = indices[i];
-            int i1 = indices[i + 1];
-            int i2 = indices[i + 2];
+    /**
+     * Copies every edge vertex skirtDepth straight down, after the grid. Each edge is walked so
+     * that its skirt faces outwards: -z edge left to right, +x edge front to back, +z edge right
+     * to left, -x edge back to front. normals and surface may be null, for meshes without them.
+     */
+    private static void writeSkirts(float skirtDepth, int size, FloatBuffer positions, FloatBuffer normals,
+                                    FloatBuffer surface) {
+        int gridVertices = size * size;
+        for (int side = 0; side < 4; side++) {
+            int base = gridVertices + side * size;
+            for (int i = 0; i < size; i++) {
+                int top = edgeVertex(side, i, size);
+                int skirt = base + i;
+                positions.put(3 * skirt, positions.get(3 * top))
+                         .put(3 * skirt + 1, positions.get(3 * top + 1) - skirtDepth)
+                         .put(3 * skirt + 2, positions.get(3 * top + 2));
+                if (normals != null) {
+                    for (int c = 0; c < 3; c++) {
+                        normals.put(3 * skirt + c, normals.get(3 * top + c));
+                    }
+                }
+                if (surface != null) {
+                    surface.put(2 * skirt, surface.get(2 * top)).put(2 * skirt + 1, skirtDepth);
+                }
+            }
+        }
+    }
 
-            Vector3f v0 = vertices[i0];
-            Vector3f v1 = vertices[i1];
-            Vector3f v2 = vertices[i2];
+    /**
+     * Samples of a child the mesh of this level keeps: every 2^lod-th, and the last one.
+     */
+    private int[] samplesFor(int lod) {
+        if (lod < LOD_SAMPLES.length) {
+            return LOD_SAMPLES[lod];
+        }
+        return lodSamples(CHUNK_SIZE, lod);
+    }
 
-            Vector3f edge1 = v1.subtract(v0);
-            Vector3f edge2 = v2.subtract(v0);
-            Vector3f normal = edge1.cross(edge2).normalizeLocal();
+    private static int[] lodSamples(int chunkSize, int lod) {
+        int step = 1 << lod;
+        int[] samples = new int[(chunkSize - 2) / step + 2];
+        for (int i = 0; i < samples.length - 1; i++) {
+            samples[i] = i * step;
+        }
+        samples[samples.length - 1] = chunkSize - 1;
+        return samples;
+    }
 
-            normals[i0].addLocal(normal);
-            normals[i1].addLocal(normal);
-            normals[i2].addLocal(normal);
+    // Grid vertex at step i along one side of the edge walk.
+    private static int edgeVertex(int side, int i, int size) {
+        int j = size - 1 - i;
+        switch (side) {
+            case 0: return i;
+            case 1: return i * size + size - 1;
+            case 2: return (size - 1) * size + j;
+            default: return j * size;
         }
+    }
 
-        for (Vector3f n : normals) {
-            n.normalizeLocal();
+    /**
+     * How far the skipped samples along the chunk's edges stray from the decimated edge, plus a
+     * little extra.
+     */
+    private float skirtDepth(Heightfield terrain, int cx, int cz, int[] samples) {
+        float maxError = 0;
+        for (int i = 0; i < samples.length - 1; i++) {
+            int from = samples[i];
+            int to = samples[i + 1];
+            for (int edge = 0; edge < 4; edge++) {
+                int fixed = edge < 2 ? 0 : CHUNK_SIZE - 1;
+                boolean alongX = edge % 2 == 0;
+                float a = sampleHeight(terrain, cx, cz, alongX, from, fixed);
+                float b = sampleHeight(terrain, cx, cz, alongX, to, fixed);
+                for (int s = from + 1; s < to; s++) {
+                    float expected = a + (b - a) * (s - from) / (to - from);
+                    float actual = sampleHeight(terrain, cx, cz, alongX, s, fixed);
+                    maxError = Math.max(maxError, Math.abs(actual - expected));
+                }
+            }
         }
+        return maxError * MAX_HEIGHT + SCALE / 16 * 2;
+    }
 
-        return normals;
+    private static float sampleHeight(Heightfield terrain, int cx, int cz, boolean alongX, int along,
+                                      int fixed) {
+        return alongX ? terrain.getHeight(cx + along, cz + fixed) : terrain.getHeight(cx + fixed, cz + along);
     }
 
-    public Geometry createGeometry(ChunkCoord chunk, Mesh mesh) {
+    /**
+     * Only full-detail chunks (the ring around the car) get a collision body.
+     */
+    public Geometry createGeometry(ChunkCoord chunk, Mesh mesh, int lod) {
         Geometry chunkGeom = new Geometry("Chunk_" + chunk.x + "_" + chunk.z, mesh);
-        Material mat = new Material(assetManager, "Common/MatDefs/Light/Lighting.j3md");
-        mat.setBoolean("UseVertexColor", true);
+        chunkGeom.setMaterial(terrainMaterial);
+        placeChunk(chunkGeom, chunk, lod);
+        if (lod == 0) {
+            MeshCollisionShape terrainShape = new MeshCollisionShape(mesh);
+            RigidBodyControl chunkPhysics = new RigidBodyControl(terrainShape, 0);
+            chunkGeom.addControl(chunkPhysics);
+        }
 
-        chunkGeom.setMaterial(mat);
+        mesh.updateBound();
+        mesh.updateCounts();
+        //TangentBinormalGenerator.generate(mesh);
 
+        return chunkGeom;
+    }
+
+    private void placeChunk(Geometry chunkGeom, ChunkCoord chunk, int lod) {
         chunkGeom.setLocalTranslation(
                 chunk.x * (CHUNK_SIZE - 1f) * (SCALE / 16),
                 0,
                 chunk.z * (CHUNK_SIZE - 1f) * (SCALE / 16)
         );
+        chunkGeom.setUserData("lod", lod);
+    }
 
-        MeshCollisionShape terrainShape = new MeshCollisionShape(mesh);
-        RigidBodyControl chunkPhysics = new RigidBodyControl(terrainShape, 0);
-        chunkGeom.addControl(chunkPhysics);
+    /**
+     * Frees a chunk that has been evicted for good. Must run on the render thread after the
+     * geometry has been detached: buffers that were uploaded are handed to the renderer to delete
+     * their GL objects, and the direct buffers behind them go back to the pool for the next mesh.
+     * A displaced chunk's height texture goes the same way. The level's shared buffers stay as
+     * they are for the other chunks. The mesh is left without buffers, so it can't draw someone
+     * else's data by mistake.
+     */
+    public void releaseGeometry(Geometry chunkGeom) {
+        // Drop the rigid body so its native collision shape becomes unreachable right away rather
+        // than whenever the geometry itself is collected.
+        chunkGeom.removeControl(RigidBodyControl.class);
+        for (MatParamOverride override : chunkGeom.getLocalMatParamOverrides().getArray()) {
+            if (override.getValue() instanceof Texture) {
+                Image image = ((Texture) override.getValue()).getImage();
+                if (image.getId() != -1) {
+                    image.dispose();
+                }
+                bufferPool.release(image.getData(0));
+            }
+        }
+        chunkGeom.clearMatParamOverrides();
+        releaseMesh(chunkGeom.getMesh());
+    }
 
-        mesh.updateBound();
-        mesh.updateCounts();
-        //TangentBinormalGenerator.generate(mesh);
+    public void releaseMesh(Mesh mesh) {
+        for (VertexBuffer vb : mesh.getBufferList().getArray()) {
+            if (isShared(vb)) {
+                mesh.clearBuffer(vb.getBufferType());
+                continue;
+            }
+            if (vb.getId() != -1) {
+                vb.dispose();
+            }
+            if (vb.getData() != null) {
+                bufferPool.release(vb.getData());
+            }
+            mesh.clearBuffer(vb.getBufferType());
+        }
+    }
 
-        return chunkGeom;
+    // Whether the buffer belongs to a level of detail rather than to one chunk's mesh.
+    private boolean isShared(VertexBuffer vb) {
+        return contains(LOD_INDICES, vb) || contains(LOD_UVS, vb) || contains(flatPositions, vb)
+                || contains(flatSurface, vb);
+    }
+
+    private static boolean contains(VertexBuffer[] buffers, VertexBuffer vb) {
+        if (buffers != null) {
+            for (VertexBuffer buffer : buffers) {
+                if (buffer == vb) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public MeshBufferPool getBufferPool() {
+        return bufferPool;
     }
 
     public void CreateTerrain() {
@@ -225,23 +696,24 @@ public class TerrainGenerator{
         final ChunkCoord chunk = new ChunkCoord(0, 0);
 
             try {
-                float[][] terrain = generateHeightMap(chunk);
+                Heightfield terrain = generateHeightMap(chunk);
                 List<jMonkeyEngine.Road.Node> pathPoints =
-                        road.getRoadPointsInChunk(terrain, 0, PARENT_SIZE / 2, PARENT_SIZE - 1,
-                                                  PARENT_SIZE / 2);
-                updateHeightMap(terrain, pathPoints);
+                        road.getRoadPointsInParent(terrain, layout, PARENT_SIZE / 2, PARENT_SIZE / 2, false);
+                float exitHeight = updateHeightMap(terrain, pathPoints,
+                                                   HeightMapGenerator.NO_ENTRY_HEIGHT);
 
                 ConcurrentHashMap<ChunkCoord, Geometry> children = new ConcurrentHashMap<>();
                 ChunkCoord childCoord;
 
-                for (int x = 0; x < PARENT_SIZE / CHUNK_SIZE; x++) {
-                    for (int z = 0; z < PARENT_SIZE / CHUNK_SIZE; z++) {
+                for (int x = 0; x < layout.getChildrenPerParent(); x++) {
+                    for (int z = 0; z < layout.getChildrenPerParent(); z++) {
                         childCoord = new ChunkCoord(x, z);
-                        children.put(childCoord, manager.getChild(terrain, chunk, childCoord));
+                        children.put(childCoord, manager.getChild(terrain, chunk, childCoord, 0));
                     }
                 }
 
-                manager.addChunk(chunk, children, terrain, pathPoints);
+                manager.addChunk(chunk, children, terrain, pathPoints,
+                                 HeightMapGenerator.NO_ENTRY_HEIGHT, exitHeight);
 
                 main.enqueue(() -> {
                     Geometry chunkGeom;
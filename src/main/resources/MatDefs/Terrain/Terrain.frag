@@ -0,0 +1,51 @@
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+#import "Common/ShaderLib/BlinnPhongLighting.glsllib"
+#import "Common/ShaderLib/Lighting.glsllib"
+
+uniform vec4 g_LightData[NB_LIGHTS];
+uniform vec4 g_AmbientLightColor;
+
+uniform float m_BandLimits[BAND_COUNT - 1];
+uniform vec4 m_BandColors[BAND_COUNT];
+uniform float m_SnowSlope;
+uniform vec4 m_RoadColor;
+
+varying vec3 vPos;
+varying vec3 vNormal;
+varying float vHeight;
+varying float vUp;
+varying float vRoad;
+
+void main(){
+    int band = 0;
+    for (int i = 0; i < BAND_COUNT - 1; i++) {
+        if (vHeight >= m_BandLimits[i]) {
+            band = i + 1;
+        }
+    }
+    if (band == BAND_COUNT - 1 && vUp < m_SnowSlope) {
+        band = BAND_COUNT - 2;
+    }
+    vec3 color = mix(m_BandColors[band].rgb, m_RoadColor.rgb, vRoad);
+
+    // Matte: ambient plus diffuse from every light, like Lighting.j3md without specular.
+    vec3 normal = normalize(vNormal);
+    if (!gl_FrontFacing) {
+        normal = -normal;
+    }
+    vec3 light = g_AmbientLightColor.rgb;
+    for (int i = 0; i < NB_LIGHTS; i += 3) {
+        vec4 lightColor = g_LightData[i];
+        vec4 lightDir;
+        vec3 lightVec;
+        lightComputeDir(vPos, lightColor.w, g_LightData[i + 1], lightDir, lightVec);
+
+        float spotFallOff = 1.0;
+        if (lightColor.w > 1.0) {
+            spotFallOff = computeSpotFalloff(g_LightData[i + 2], lightVec);
+        }
+        light += lightColor.rgb * lightComputeDiffuse(normal, normalize(lightDir.xyz))
+                 * lightDir.w * spotFallOff;
+    }
+    gl_FragColor = vec4(color * light, 1.0);
+}
@@ -0,0 +1,73 @@
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+#import "Common/ShaderLib/Instancing.glsllib"
+
+uniform float m_MaxHeight;
+
+attribute vec3 inPosition;
+// x: 1 on road samples, 0 elsewhere. y: how far the vertex hangs below the surface (skirts).
+// With DISPLACEMENT: x unused, y 1 on skirts.
+attribute vec2 inTexCoord2;
+#ifndef DISPLACEMENT
+    attribute vec3 inNormal;
+#else
+    uniform sampler2D m_HeightMap;
+    uniform float m_HeightMapSize;
+    uniform float m_SampleSpacing;
+    uniform float m_SampleStride;
+    uniform float m_SkirtDepth;
+
+    // Height (0..1) and road flag of a sample of the chunk; the map's first row and column are
+    // the samples before the chunk's.
+    vec2 sampleAt(vec2 cell){
+        float value = texture2DLod(m_HeightMap, (cell + 1.5) / m_HeightMapSize, 0.0).r;
+        float road = step(1.5, value);
+        return vec2(value - 2.0 * road, road);
+    }
+#endif
+
+varying vec3 vPos;
+varying vec3 vNormal;
+varying float vHeight;
+varying float vUp;
+varying float vRoad;
+
+void main(){
+    #ifdef DISPLACEMENT
+        // x and z say which sample the vertex is; height and normal come from the map. As in the
+        // CPU mesh builder, the normal is from central differences between the vertex's
+        // neighbours in the level's grid (every SampleStride-th sample, and the last one), or
+        // between the samples right next to it on the chunk's edge.
+        vec2 cell = floor(inPosition.xz / m_SampleSpacing + 0.5);
+        vec2 surface = sampleAt(cell);
+        float last = m_HeightMapSize - 3.0;
+        bool edge = cell.x < 0.5 || cell.y < 0.5 || cell.x > last - 0.5 || cell.y > last - 0.5;
+        float stride = edge ? 1.0 : m_SampleStride;
+        vec2 low = cell - stride;
+        vec2 high = edge ? cell + 1.0 : min(cell + stride, vec2(last));
+        float dx = (sampleAt(vec2(high.x, cell.y)).x - sampleAt(vec2(low.x, cell.y)).x) * m_MaxHeight;
+        float dz = (sampleAt(vec2(cell.x, high.y)).x - sampleAt(vec2(cell.x, low.y)).x) * m_MaxHeight;
+        vec2 run = (high - low) * m_SampleSpacing;
+        vec3 normal = normalize(vec3(-dx * run.y, run.x * run.y, -dz * run.x));
+        float depth = inTexCoord2.y * m_SkirtDepth;
+        vec3 position = vec3(inPosition.x, surface.x * m_MaxHeight - depth, inPosition.z);
+        float road = surface.y;
+    #else
+        vec3 normal = inNormal;
+        vec3 position = inPosition;
+        float depth = inTexCoord2.y;
+        float road = inTexCoord2.x;
+    #endif
+
+    vec4 modelSpacePos = vec4(position, 1.0);
+    gl_Position = TransformWorldViewProjection(modelSpacePos);
+
+    // Lighting happens in view space.
+    vPos = TransformWorldView(modelSpacePos).xyz;
+    vNormal = normalize(TransformNormal(normal));
+
+    // Chunks are only ever translated, so the model's y is the terrain height and the normal's y
+    // how flat it is there. A skirt takes the colour of the edge above it.
+    vHeight = (position.y + depth) / m_MaxHeight;
+    vUp = normal.y;
+    vRoad = road;
+}
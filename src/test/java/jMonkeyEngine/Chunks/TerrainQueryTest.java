@@ -0,0 +1,102 @@
+package jMonkeyEngine.Chunks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import jMonkeyEngine.Terrain.HeightMapGenerator;
+import jMonkeyEngine.Terrain.NoiseGraph;
+import jMonkeyEngine.Terrain.TerrainGenerator;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * TerrainQuery against the level-0 meshes of the children on both sides of a parent border:
+ * heightAt must land on every grid vertex, normalAt must match the slope of heightAt and uncached
+ * parents must have no answer.
+ */
+class TerrainQueryTest {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+    private static final int MAX_HEIGHT = 200;
+
+    private final ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+    private final HeightMapGenerator generator =
+            new HeightMapGenerator(946496062586794636L, PARENT_SIZE, layout.getParentSpan(), layout.getApron(),
+                                   40, NoiseGraph.defaultTerrain().compile());
+    private final ChunkCache cache = new ChunkCache(Long.MAX_VALUE, 1, geom -> { });
+    private final TerrainQuery query = new TerrainQuery(cache, layout, MAX_HEIGHT);
+    private final float spacing = layout.getSampleSpacing();
+    // The two cached parents, (3, -1) and (4, -1), in world units.
+    private final float minX = layout.toWorld(3, layout.roadStart());
+    private final float width = 2 * layout.getParentSpan() * spacing;
+    private final float minZ = layout.toWorld(-1, layout.roadStart());
+    private final float depth = layout.getParentSpan() * spacing;
+
+    TerrainQueryTest() {
+        cache.putHeightmap(new ChunkCoord(3, -1), generator.generateHeightmap(3, -1));
+        cache.putHeightmap(new ChunkCoord(4, -1), generator.generateHeightmap(4, -1));
+    }
+
+    @Test
+    void heightAtLandsOnMeshVertices() {
+        TerrainGenerator meshes = new TerrainGenerator(null, null, null, null, null, null,
+                                                       CHUNK_SIZE, PARENT_SIZE, 40, 0L, MAX_HEIGHT);
+        int lastChild = layout.getChildrenPerParent() * 4 - 1;
+        int childZ = -3;
+        int mismatches = 0;
+        for (int childX : new int[]{lastChild, lastChild + 1}) {
+            int parentX = layout.parentOf(childX);
+            Mesh mesh = meshes.generateChunkMesh(cache.peekHeightmap(ChunkCoord.pack(parentX, -1)),
+                                                 layout.childOrigin(childX), layout.childOrigin(childZ), 0);
+            FloatBuffer positions = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Position).getData();
+            for (int v = 0; v < CHUNK_SIZE * CHUNK_SIZE; v++) {
+                float x = positions.get(3 * v) + childX * (CHUNK_SIZE - 1) * spacing;
+                float y = positions.get(3 * v + 1);
+                float z = positions.get(3 * v + 2) + childZ * (CHUNK_SIZE - 1) * spacing;
+                if (Math.abs(query.heightAt(x, z) - y) > 1e-3f) {
+                    mismatches++;
+                }
+            }
+            meshes.releaseMesh(mesh);
+        }
+        assertEquals(0, mismatches, "mesh vertices heightAt misses");
+    }
+
+    @Test
+    void normalAtMatchesSlopeOfHeightAt() {
+        Random random = new Random(1);
+        Vector3f normal = new Vector3f();
+        int mismatches = 0;
+        for (int i = 0; i < 1000; i++) {
+            float x = minX + random.nextFloat() * (width - 2 * spacing) + spacing;
+            float z = minZ + random.nextFloat() * (depth - 2 * spacing) + spacing;
+            // Inside one cell the surface is bilinear: the slope along x is exact between x +/- e.
+            float e = 0.01f;
+            float cellX = (float) Math.floor(x / spacing) * spacing;
+            float cellZ = (float) Math.floor(z / spacing) * spacing;
+            float px = Math.max(cellX + e, Math.min(cellX + spacing - e, x));
+            float pz = Math.max(cellZ + e, Math.min(cellZ + spacing - e, z));
+            float slopeX = (query.heightAt(px + e, pz) - query.heightAt(px - e, pz)) / (2 * e);
+            float slopeZ = (query.heightAt(px, pz + e) - query.heightAt(px, pz - e)) / (2 * e);
+            Vector3f expected = new Vector3f(-slopeX, 1, -slopeZ).normalizeLocal();
+            if (query.normalAt(px, pz, normal).distance(expected) > 1e-2f) {
+                mismatches++;
+            }
+        }
+        assertEquals(0, mismatches, "normals off the slope of heightAt");
+    }
+
+    @Test
+    void uncachedParentHasNoAnswer() {
+        Vector3f normal = new Vector3f();
+        assertTrue(Float.isNaN(query.heightAt(minX, minZ + depth + spacing)));
+        assertNull(query.normalAt(minX, -minZ, normal));
+        assertFalse(query.isLoaded(-minX, minZ));
+    }
+}
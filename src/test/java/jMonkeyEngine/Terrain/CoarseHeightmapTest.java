@@ -0,0 +1,83 @@
+package jMonkeyEngine.Terrain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import jMonkeyEngine.Chunks.ChunkLayout;
+import java.nio.FloatBuffer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The coarse-first parent against a full one: level 2+ meshes built from the coarse pass
+ * (positions and normals) must match the full ones, and refined tiles must match bit for bit.
+ */
+class CoarseHeightmapTest {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+    private static final int COARSE_LOD = 2;
+    private static final int[][] PARENTS = {{0, 0}, {3, -2}, {-40, 7}};
+
+    private final ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+    private final HeightMapGenerator generator =
+            new HeightMapGenerator(946496062586794636L, PARENT_SIZE, layout.getParentSpan(), layout.getApron(),
+                                   40, NoiseGraph.defaultTerrain().compile());
+    private final TerrainGenerator meshes = new TerrainGenerator(null, null, null, null, null, null,
+                                                                 CHUNK_SIZE, PARENT_SIZE, 40, 0L, 200);
+
+    @Test
+    void coarseMeshesMatchFullParent() {
+        int children = layout.getChildrenPerParent();
+        for (int[] parent : PARENTS) {
+            Heightfield full = generator.generateHeightmapSerial(parent[0], parent[1]);
+            RefinableHeightfield coarse = generator.generateCoarseHeightmap(parent[0], parent[1], CHUNK_SIZE,
+                                                                            1 << COARSE_LOD);
+            int mismatches = 0;
+            for (int z = 0; z < children; z++) {
+                for (int x = 0; x < children; x++) {
+                    for (int lod = COARSE_LOD; lod < 4; lod++) {
+                        Mesh a = meshes.generateChunkMesh(full, layout.childOrigin(x), layout.childOrigin(z), lod);
+                        Mesh b = meshes.generateChunkMesh(coarse, layout.childOrigin(x), layout.childOrigin(z), lod);
+                        if (!sameMesh(a, b)) {
+                            mismatches++;
+                        }
+                        meshes.releaseMesh(a);
+                        meshes.releaseMesh(b);
+                    }
+                }
+            }
+            assertEquals(0, mismatches, "meshes differing in parent " + parent[0] + "," + parent[1]);
+        }
+    }
+
+    @Test
+    void refinedTileMatchesFullParent() {
+        for (int[] parent : PARENTS) {
+            Heightfield full = generator.generateHeightmapSerial(parent[0], parent[1]);
+            RefinableHeightfield coarse = generator.generateCoarseHeightmap(parent[0], parent[1], CHUNK_SIZE,
+                                                                            1 << COARSE_LOD);
+            int cx = layout.childOrigin(2);
+            int cz = layout.childOrigin(3);
+            generator.refineTile(coarse, cx, cz);
+            // The tile and the sample beyond each of its borders.
+            for (int z = cz - 1; z <= cz + CHUNK_SIZE; z++) {
+                for (int x = cx - 1; x <= cx + CHUNK_SIZE; x++) {
+                    assertEquals(Float.floatToRawIntBits(full.get(x, z)), Float.floatToRawIntBits(coarse.get(x, z)),
+                                 "sample " + x + "," + z + " of parent " + parent[0] + "," + parent[1]);
+                }
+            }
+        }
+    }
+
+    private static boolean sameMesh(Mesh a, Mesh b) {
+        for (VertexBuffer.Type type : new VertexBuffer.Type[]{VertexBuffer.Type.Position,
+                                                              VertexBuffer.Type.Normal}) {
+            FloatBuffer pa = (FloatBuffer) a.getBuffer(type).getData();
+            FloatBuffer pb = (FloatBuffer) b.getBuffer(type).getData();
+            if (!pa.rewind().equals(pb.rewind())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
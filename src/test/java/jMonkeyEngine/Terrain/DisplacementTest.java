@@ -0,0 +1,104 @@
+package jMonkeyEngine.Terrain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.texture.Texture2D;
+import jMonkeyEngine.Chunks.ChunkLayout;
+import jMonkeyEngine.Road.Node;
+import jMonkeyEngine.Road.RoadGenerator;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Displaces every child of a parent with a road through it, at the first four levels of detail,
+ * the way the terrain vertex shader does in displacement mode: from the child's height texture,
+ * at the x and z of the CPU mesh's vertices. Heights, normals, road flags and skirts must match
+ * the CPU mesh, and the texture's height range must hold them.
+ */
+class DisplacementTest {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+    private static final int MAX_HEIGHT = 200;
+
+    @Test
+    void displacedVerticesMatchMeshes() {
+        ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+        HeightMapGenerator generator =
+                new HeightMapGenerator(946496062586794636L, PARENT_SIZE, layout.getParentSpan(), layout.getApron(),
+                                       40, NoiseGraph.defaultTerrain().compile());
+        TerrainGenerator meshes = new TerrainGenerator(null, null, null, null, null, null,
+                                                       CHUNK_SIZE, PARENT_SIZE, 40, 0L, MAX_HEIGHT);
+        Heightfield terrain = generator.generateHeightmap(0, 0);
+        RoadGenerator roads = new RoadGenerator();
+        List<Node> path = roads.getRoadPointsInParent(terrain, layout, PARENT_SIZE / 2, PARENT_SIZE / 2, false);
+        generator.applyRoadFlattening(terrain, path, HeightMapGenerator.NO_ENTRY_HEIGHT);
+
+        float spacing = layout.getSampleSpacing();
+        int size = CHUNK_SIZE + 2;
+        int last = CHUNK_SIZE - 1;
+        int mismatches = 0;
+        int roadVertices = 0;
+        float[] range = new float[2];
+        for (int lod = 0; lod < 4; lod++) {
+            for (int z = 0; z < layout.getChildrenPerParent(); z++) {
+                for (int x = 0; x < layout.getChildrenPerParent(); x++) {
+                    int cx = layout.childOrigin(x);
+                    int cz = layout.childOrigin(z);
+                    Mesh mesh = meshes.generateChunkMesh(terrain, cx, cz, lod);
+                    Texture2D texture = meshes.generateHeightTexture(terrain, cx, cz, range);
+                    ByteBuffer map = texture.getImage().getData(0);
+                    FloatBuffer positions = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Position).getData();
+                    FloatBuffer normals = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Normal).getData();
+                    FloatBuffer surface = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.TexCoord2).getData();
+                    for (int v = 0; v < mesh.getVertexCount(); v++) {
+                        int sx = (int) Math.floor(positions.get(3 * v) / spacing + 0.5f);
+                        int sz = (int) Math.floor(positions.get(3 * v + 2) / spacing + 0.5f);
+                        float height = height(map, size, sx, sz);
+                        boolean road = map.getFloat(4 * ((sz + 1) * size + sx + 1)) > 1.5f;
+                        boolean edge = sx == 0 || sz == 0 || sx == last || sz == last;
+                        int stride = edge ? 1 : 1 << lod;
+                        int highX = edge ? sx + 1 : Math.min(sx + stride, last);
+                        int highZ = edge ? sz + 1 : Math.min(sz + stride, last);
+                        float dx = (height(map, size, highX, sz) - height(map, size, sx - stride, sz)) * MAX_HEIGHT;
+                        float dz = (height(map, size, sx, highZ) - height(map, size, sx, sz - stride)) * MAX_HEIGHT;
+                        float runX = (highX - sx + stride) * spacing;
+                        float runZ = (highZ - sz + stride) * spacing;
+                        float nx = -dx * runZ;
+                        float ny = runX * runZ;
+                        float nz = -dz * runX;
+                        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                        // Skirts hang their depth below the surface, as SkirtDepth does on the GPU.
+                        float y = height * MAX_HEIGHT - surface.get(2 * v + 1);
+
+                        boolean same = Math.abs(y - positions.get(3 * v + 1)) < 1e-3f
+                                && Math.abs(nx / length - normals.get(3 * v)) < 1e-4f
+                                && Math.abs(ny / length - normals.get(3 * v + 1)) < 1e-4f
+                                && Math.abs(nz / length - normals.get(3 * v + 2)) < 1e-4f
+                                && road == (surface.get(2 * v) == 1f)
+                                && height >= range[0] && height <= range[1];
+                        if (!same) {
+                            mismatches++;
+                        }
+                        if (road) {
+                            roadVertices++;
+                        }
+                    }
+                    meshes.releaseMesh(mesh);
+                    meshes.getBufferPool().release(map);
+                }
+            }
+        }
+        assertTrue(roadVertices > 0, "no road vertices displaced");
+        assertEquals(0, mismatches, "displaced vertices differing from the CPU meshes");
+    }
+
+    private static float height(ByteBuffer map, int size, int sx, int sz) {
+        float value = map.getFloat(4 * ((sz + 1) * size + sx + 1));
+        return value > 1.5f ? value - 2 : value;
+    }
+}
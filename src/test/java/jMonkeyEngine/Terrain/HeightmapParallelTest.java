@@ -0,0 +1,28 @@
+package jMonkeyEngine.Terrain;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The fork/join heightmap generation must match the serial one bit for bit over a spread of seeds
+ * and parent coordinates.
+ */
+class HeightmapParallelTest {
+    private static final long[] SEEDS = {946496062586794636L, 0L, 12345L, -7L, Long.MAX_VALUE};
+    private static final int[][] PARENTS = {{0, 0}, {1, 0}, {-1, 3}, {17, -4}, {-250, 250}};
+
+    @Test
+    void parallelMatchesSerial() {
+        for (long seed : SEEDS) {
+            HeightMapGenerator generator = new HeightMapGenerator(seed, 1000, 40);
+            for (int[] parent : PARENTS) {
+                Heightfield serial = generator.generateHeightmapSerial(parent[0], parent[1]);
+                Heightfield parallel = generator.generateHeightmap(parent[0], parent[1]);
+                String where = "seed " + seed + " parent " + parent[0] + "," + parent[1];
+                assertArrayEquals(serial.getHeights(), parallel.getHeights(), where);
+                assertArrayEquals(serial.getRoadMask(), parallel.getRoadMask(), where);
+            }
+        }
+    }
+}
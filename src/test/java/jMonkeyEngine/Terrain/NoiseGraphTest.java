@@ -0,0 +1,46 @@
+package jMonkeyEngine.Terrain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.jme3.math.FastMath;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The default noise graph must reproduce the original hand-written terrain expression bit for
+ * bit, as stored: quantised to the heightfield's 16-bit heights.
+ */
+class NoiseGraphTest {
+    private static final int SIZE = 1000;
+    private static final double SCALE = 40;
+
+    @Test
+    void defaultGraphMatchesOriginalExpression() {
+        long seed = 946496062586794636L;
+        HeightMapGenerator generator = new HeightMapGenerator(seed, SIZE, SCALE);
+        for (int parentX = -1; parentX <= 1; parentX++) {
+            Heightfield graph = generator.generateHeightmapSerial(parentX, 2);
+            short[] heights = graph.getHeights();
+            int mismatches = 0;
+            for (int y = 0; y < SIZE; y += 7) {
+                for (int x = 0; x < SIZE; x++) {
+                    if (Heightfield.encode(reference(seed, parentX, 2, x, y)) != heights[graph.index(x, y)]) {
+                        mismatches++;
+                    }
+                }
+            }
+            assertEquals(0, mismatches, "samples differing in parent " + parentX + ",2");
+        }
+    }
+
+    private static float reference(long seed, int chunkX, int chunkZ, int x, int y) {
+        double worldX = (chunkX * (SIZE - 1) + x) / SCALE;
+        double worldY = (chunkZ * (SIZE - 1) + y) / SCALE;
+        float e = 40f * OpenSimplex2.noise2(seed, 0.05f * worldX, 0.05f * worldY) +
+                6f * OpenSimplex2.noise2(seed, 0.25f * worldX, 0.25f * worldY) +
+                0.9f * OpenSimplex2.noise2(seed, 0.5f * worldX, 0.5f * worldY) +
+                0.6f * OpenSimplex2.noise2(seed, 0.75f * worldX, 0.75f * worldY);
+        e = e / (40f + 6f + 0.9f + 0.6f);
+        e = (e + 1f) / 2f;
+        return FastMath.pow(e, 0.8f);
+    }
+}
@@ -0,0 +1,29 @@
+package jMonkeyEngine.Terrain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * OpenSimplex2.noise2Row must give exactly what one OpenSimplex2.noise2 call per sample gives.
+ */
+class NoiseRowTest {
+    private static final long SEED = 946496062586794636L;
+    private static final int SIZE = 1000;
+    private static final double FREQUENCY = 0.05f / 40.0;
+
+    @Test
+    void rowMatchesPerSampleNoise() {
+        float[] row = new float[SIZE];
+        for (int parent = -2; parent <= 2; parent++) {
+            double x0 = parent * (SIZE - 1) * FREQUENCY;
+            for (int y = 0; y < SIZE; y += 37) {
+                OpenSimplex2.noise2Row(SEED, x0, FREQUENCY, y * FREQUENCY, SIZE, row, 0);
+                for (int x = 0; x < SIZE; x++) {
+                    assertEquals(Float.floatToRawIntBits(OpenSimplex2.noise2(SEED, x0 + x * FREQUENCY, y * FREQUENCY)),
+                                 Float.floatToRawIntBits(row[x]), "sample " + x + "," + y + " of parent " + parent);
+                }
+            }
+        }
+    }
+}
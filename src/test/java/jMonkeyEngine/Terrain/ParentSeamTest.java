@@ -0,0 +1,177 @@
+package jMonkeyEngine.Terrain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import jMonkeyEngine.Chunks.ChunkLayout;
+import jMonkeyEngine.Road.Node;
+import jMonkeyEngine.Road.RoadGenerator;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Neighbouring parents must agree on every sample they both hold (the shared border and the
+ * aprons), road or not, and neighbouring children, inside a parent and across a parent border and
+ * at different levels of detail, must put their shared edge vertices at the same height with the
+ * same normal.
+ */
+class ParentSeamTest {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+    private static final int ROAD_PARENTS = 4;
+
+    private final ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+    private final HeightMapGenerator generator =
+            new HeightMapGenerator(946496062586794636L, PARENT_SIZE, layout.getParentSpan(), layout.getApron(),
+                                   40, NoiseGraph.defaultTerrain().compile());
+    private final TerrainGenerator meshes = new TerrainGenerator(null, null, null, null, null, null,
+                                                                 CHUNK_SIZE, PARENT_SIZE, 40, 0L, 200);
+    // Planning the road takes a while, so the road parents are built once for all tests, along
+    // with the child row each one's road leaves it through.
+    private static List<Heightfield> roadParents;
+    private static int[] crossingChildren;
+    private int compared;
+
+    @Test
+    void neighbouringParentsShareSamples() {
+        assertSharedSamplesMatch(generator.generateHeightmap(3, -1), generator.generateHeightmap(4, -1),
+                                 layout.parentOrigin(4) - layout.parentOrigin(3));
+    }
+
+    @Test
+    void roadCrossingParentsShareSamples() {
+        List<Heightfield> parents = roadParents();
+        for (int p = 1; p < ROAD_PARENTS; p++) {
+            assertSharedSamplesMatch(parents.get(p - 1), parents.get(p),
+                                     layout.parentOrigin(p) - layout.parentOrigin(p - 1));
+        }
+    }
+
+    @Test
+    void sharedEdgeVerticesMatchAtEveryPairOfLevels() {
+        assertEdgesMatch(generator.generateHeightmap(3, -1), generator.generateHeightmap(4, -1), 2);
+    }
+
+    @Test
+    void roadCrossingEdgeVerticesMatchAtEveryPairOfLevels() {
+        List<Heightfield> parents = roadParents();
+        for (int p = 1; p < ROAD_PARENTS; p++) {
+            assertEdgesMatch(parents.get(p - 1), parents.get(p), crossingChildren[p - 1]);
+        }
+    }
+
+    /**
+     * The parents (0..ROAD_PARENTS - 1, 0) with the road planned and flattened through them in
+     * order, as ChunkManager does.
+     */
+    private List<Heightfield> roadParents() {
+        if (roadParents != null) {
+            return roadParents;
+        }
+        RoadGenerator road = new RoadGenerator();
+        road.lastZCoord = PARENT_SIZE / 2;
+        List<Heightfield> parents = new ArrayList<>();
+        crossingChildren = new int[ROAD_PARENTS];
+        float exitHeight = HeightMapGenerator.NO_ENTRY_HEIGHT;
+        for (int p = 0; p < ROAD_PARENTS; p++) {
+            Heightfield terrain = generator.generateHeightmap(p, 0);
+            List<Node> path = road.getRoadPointsInParent(terrain, layout, road.lastZCoord, PARENT_SIZE / 2,
+                                                         exitHeight != HeightMapGenerator.NO_ENTRY_HEIGHT);
+            assertTrue(path.size() > 1, "no road through parent " + p);
+            exitHeight = generator.applyRoadFlattening(terrain, path, exitHeight);
+            parents.add(terrain);
+            crossingChildren[p] = Math.min(layout.getChildrenPerParent() - 1,
+                                           (road.lastZCoord - layout.getApron()) / (CHUNK_SIZE - 1));
+        }
+        roadParents = parents;
+        return parents;
+    }
+
+    /**
+     * Global sample g is local g - parentOrigin in each parent, so right's column x - shift is
+     * left's column x.
+     */
+    private void assertSharedSamplesMatch(Heightfield left, Heightfield right, int shift) {
+        int heights = 0;
+        int roads = 0;
+        for (int x = shift; x < PARENT_SIZE; x++) {
+            for (int z = 0; z < PARENT_SIZE; z++) {
+                int a = left.index(x, z);
+                int b = right.index(x - shift, z);
+                if (left.getHeights()[a] != right.getHeights()[b]) {
+                    heights++;
+                }
+                if (left.isRoad(a) != right.isRoad(b)) {
+                    roads++;
+                }
+            }
+        }
+        assertEquals(0, heights, "heights of samples held by both parents that differ");
+        assertEquals(0, roads, "road bits of samples held by both parents that differ");
+    }
+
+    /**
+     * Compares the shared edges of the children in row childZ: across the border between the two
+     * parents and inside the left one.
+     */
+    private void assertEdgesMatch(Heightfield left, Heightfield right, int childZ) {
+        int mismatches = 0;
+        compared = 0;
+        int last = layout.getChildrenPerParent() - 1;
+        for (int lodA = 0; lodA < 4; lodA++) {
+            for (int lodB = 0; lodB < 4; lodB++) {
+                // Across the parent border: child 'last' of the left parent, child 0 of the right.
+                mismatches += compareEdges(meshes.generateChunkMesh(left, layout.childOrigin(last), layout.childOrigin(childZ), lodA),
+                                           meshes.generateChunkMesh(right, layout.childOrigin(0), layout.childOrigin(childZ), lodB));
+                // Inside a parent.
+                mismatches += compareEdges(meshes.generateChunkMesh(left, layout.childOrigin(1), layout.childOrigin(childZ), lodA),
+                                           meshes.generateChunkMesh(left, layout.childOrigin(2), layout.childOrigin(childZ), lodB));
+            }
+        }
+        assertTrue(compared > 0, "no shared edge vertices compared");
+        assertEquals(0, mismatches, "of " + compared + " shared edge vertices differ");
+    }
+
+    /**
+     * Compares the +x edge of a with the -x edge of b wherever both have a vertex, then releases
+     * both meshes.
+     */
+    private int compareEdges(Mesh a, Mesh b) {
+        int sizeA = gridSize(a);
+        int sizeB = gridSize(b);
+        FloatBuffer posA = (FloatBuffer) a.getBuffer(VertexBuffer.Type.Position).getData();
+        FloatBuffer posB = (FloatBuffer) b.getBuffer(VertexBuffer.Type.Position).getData();
+        FloatBuffer normA = (FloatBuffer) a.getBuffer(VertexBuffer.Type.Normal).getData();
+        FloatBuffer normB = (FloatBuffer) b.getBuffer(VertexBuffer.Type.Normal).getData();
+
+        int mismatches = 0;
+        for (int i = 0; i < sizeA; i++) {
+            int va = i * sizeA + sizeA - 1;
+            for (int j = 0; j < sizeB; j++) {
+                int vb = j * sizeB;
+                if (posA.get(va * 3 + 2) != posB.get(vb * 3 + 2)) continue;
+                compared++;
+                for (int k = 0; k < 3; k++) {
+                    if (k != 0 && posA.get(va * 3 + k) != posB.get(vb * 3 + k)
+                            || normA.get(va * 3 + k) != normB.get(vb * 3 + k)) {
+                        mismatches++;
+                        break;
+                    }
+                }
+            }
+        }
+        meshes.releaseMesh(a);
+        meshes.releaseMesh(b);
+        return mismatches;
+    }
+
+    // Grid vertices come first, then four skirts of one row each: size^2 + 4 * size vertices.
+    private static int gridSize(Mesh mesh) {
+        int vertices = mesh.getVertexCount();
+        return (int) Math.round(Math.sqrt(vertices + 4) - 2);
+    }
+}
@@ -0,0 +1,68 @@
+package jMonkeyEngine.Terrain;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import jMonkeyEngine.Chunks.ChunkLayout;
+import jMonkeyEngine.Road.Node;
+import jMonkeyEngine.Road.RoadGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Plans a few parents of road in order and flattens them one after another, carrying the entry
+ * height along; flattening them all again at once on a thread pool must give bit-identical
+ * parents.
+ */
+class RoadFlatteningTest {
+    private static final int PARENT_SIZE = 1000;
+    private static final int CHUNK_SIZE = 200;
+    private static final int PARENTS = 6;
+
+    @Test
+    void parallelFlatteningMatchesSequential() throws Exception {
+        ChunkLayout layout = new ChunkLayout(CHUNK_SIZE, PARENT_SIZE, 40);
+        HeightMapGenerator generator =
+                new HeightMapGenerator(946496062586794636L, PARENT_SIZE, layout.getParentSpan(), layout.getApron(),
+                                       40, NoiseGraph.defaultTerrain().compile());
+        RoadGenerator road = new RoadGenerator();
+        road.lastZCoord = PARENT_SIZE / 2;
+
+        List<List<Node>> paths = new ArrayList<>();
+        List<Float> entryHeights = new ArrayList<>();
+        List<Heightfield> sequential = new ArrayList<>();
+        float exitHeight = HeightMapGenerator.NO_ENTRY_HEIGHT;
+        for (int p = 0; p < PARENTS; p++) {
+            Heightfield terrain = generator.generateHeightmap(p, 0);
+            List<Node> path = road.getRoadPointsInParent(terrain, layout, road.lastZCoord, PARENT_SIZE / 2, p > 0);
+            paths.add(path);
+            entryHeights.add(exitHeight);
+            exitHeight = generator.applyRoadFlattening(terrain, path, exitHeight);
+            sequential.add(terrain);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Heightfield>> parallel = new ArrayList<>();
+            for (int p = 0; p < PARENTS; p++) {
+                final int parent = p;
+                parallel.add(pool.submit(() -> {
+                    Heightfield terrain = generator.generateHeightmapSerial(parent, 0);
+                    generator.applyRoadFlattening(terrain, paths.get(parent), entryHeights.get(parent));
+                    return terrain;
+                }));
+            }
+            for (int p = 0; p < PARENTS; p++) {
+                Heightfield a = sequential.get(p);
+                Heightfield b = parallel.get(p).get();
+                assertArrayEquals(a.getHeights(), b.getHeights(), "heights of parent " + p);
+                assertArrayEquals(a.getRoadMask(), b.getRoadMask(), "road of parent " + p);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}